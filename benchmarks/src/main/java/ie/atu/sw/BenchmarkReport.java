@@ -0,0 +1,236 @@
+package ie.atu.sw;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Compares a JMH JSON result file against a saved baseline and flags regressions.
+ *
+ * <pre>
+ *   java -jar target/benchmarks.jar -rf json -rff baseline.json     (once, on the reference build)
+ *   java -jar target/benchmarks.jar -rf json -rff current.json      (on the build being checked)
+ *   java -cp target/benchmarks.jar ie.atu.sw.BenchmarkReport baseline.json current.json [threshold %]
+ * </pre>
+ *
+ * <p>The exit code is 1 if any benchmark got worse by more than the threshold (default 10%), so the report can be
+ * used as a build gate.</p>
+ */
+public final class BenchmarkReport {
+    private BenchmarkReport() {
+    }
+
+    // One benchmark and parameter combination
+    private record Score(double value, String unit) {
+        // Time per operation is better when lower, throughput is better when higher
+        boolean lowerIsBetter() {
+            return unit.endsWith("/op");
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: BenchmarkReport <baseline.json> <current.json> [threshold %]");
+            return;
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 10.0;
+
+        Map<String, Score> baseline = read(Path.of(args[0]));
+        Map<String, Score> current = read(Path.of(args[1]));
+
+        int regressions = 0;
+        System.out.printf("%-80s %14s %14s %9s%n", "Benchmark", "Baseline", "Current", "Change");
+        for (Map.Entry<String, Score> entry : current.entrySet()) {
+            Score now = entry.getValue();
+            Score before = baseline.get(entry.getKey());
+            if (before == null || !before.unit.equals(now.unit)) {
+                System.out.printf("%-80s %14s %14.3f %9s%n", entry.getKey(), "-", now.value, "new");
+                continue;
+            }
+
+            // Positive change = better, whatever the unit
+            double change = (now.value - before.value) / before.value * 100;
+            if (now.lowerIsBetter()) {
+                change = -change;
+            }
+            boolean regression = change < -threshold;
+            if (regression) {
+                regressions++;
+            }
+            System.out.printf("%-80s %14.3f %14.3f %+8.1f%% %s%s%n", entry.getKey(), before.value, now.value, change,
+                    now.unit, regression ? "  REGRESSION" : "");
+        }
+
+        System.out.println(regressions == 0 ? "No regressions over " + threshold + "%"
+                : regressions + " regression(s) over " + threshold + "%");
+        if (regressions > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Reads the primary score of every benchmark in a JMH JSON result file.
+     *
+     * @param file The result file.
+     * @return Scores keyed by benchmark name and parameters.
+     * @throws IOException If the file can't be read or is not JMH JSON.
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, Score> read(Path file) throws IOException {
+        Object json = new JsonParser(Files.readString(file)).parse();
+        if (!(json instanceof List<?> runs)) {
+            throw new IOException("Not a JMH JSON result file: " + file);
+        }
+
+        Map<String, Score> scores = new TreeMap<>();
+        for (Object run : runs) {
+            Map<String, Object> result = (Map<String, Object>) run;
+            StringBuilder key = new StringBuilder(String.valueOf(result.get("benchmark")));
+            Object params = result.get("params");
+            if (params instanceof Map<?, ?> map) {
+                new TreeMap<>((Map<String, Object>) map).forEach((name, value) -> key.append(' ').append(name)
+                        .append('=').append(value));
+            }
+
+            Map<String, Object> metric = (Map<String, Object>) result.get("primaryMetric");
+            if (!(metric.get("score") instanceof Number)) {
+                // JMH writes "NaN" for failed runs
+                continue;
+            }
+            scores.put(key.toString(), new Score(((Number) metric.get("score")).doubleValue(),
+                    String.valueOf(metric.get("scoreUnit"))));
+        }
+        return scores;
+    }
+
+    /**
+     * Just enough of a JSON parser for JMH result files: objects, arrays, strings, numbers, booleans and null.
+     */
+    private static final class JsonParser {
+        private final String text;
+        private int position;
+
+        JsonParser(String text) {
+            this.text = text;
+        }
+
+        Object parse() throws IOException {
+            skipWhitespace();
+            if (position >= text.length()) {
+                throw new IOException("Unexpected end of JSON");
+            }
+
+            char c = text.charAt(position);
+            switch (c) {
+                case '{' -> {
+                    position++;
+                    Map<String, Object> object = new LinkedHashMap<>();
+                    skipWhitespace();
+                    if (peek('}')) {
+                        return object;
+                    }
+                    do {
+                        skipWhitespace();
+                        String name = (String) parse();
+                        expect(':');
+                        object.put(name, parse());
+                        skipWhitespace();
+                    } while (peek(','));
+                    expect('}');
+                    return object;
+                }
+                case '[' -> {
+                    position++;
+                    List<Object> array = new ArrayList<>();
+                    skipWhitespace();
+                    if (peek(']')) {
+                        return array;
+                    }
+                    do {
+                        array.add(parse());
+                        skipWhitespace();
+                    } while (peek(','));
+                    expect(']');
+                    return array;
+                }
+                case '"' -> {
+                    return string();
+                }
+                default -> {
+                    return literal();
+                }
+            }
+        }
+
+        private String string() throws IOException {
+            StringBuilder value = new StringBuilder();
+            position++;
+            while (position < text.length()) {
+                char c = text.charAt(position++);
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c == '\\') {
+                    char escaped = text.charAt(position++);
+                    switch (escaped) {
+                        case 'n' -> value.append('\n');
+                        case 't' -> value.append('\t');
+                        case 'r' -> value.append('\r');
+                        case 'b' -> value.append('\b');
+                        case 'f' -> value.append('\f');
+                        case 'u' -> {
+                            value.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                            position += 4;
+                        }
+                        default -> value.append(escaped);
+                    }
+                } else {
+                    value.append(c);
+                }
+            }
+            throw new IOException("Unterminated JSON string");
+        }
+
+        private Object literal() throws IOException {
+            int start = position;
+            while (position < text.length() && ",}] \t\r\n".indexOf(text.charAt(position)) < 0) {
+                position++;
+            }
+            String token = text.substring(start, position);
+            return switch (token) {
+                case "true" -> Boolean.TRUE;
+                case "false" -> Boolean.FALSE;
+                case "null" -> null;
+                default -> {
+                    try {
+                        yield Double.parseDouble(token);
+                    } catch (NumberFormatException e) {
+                        throw new IOException("Invalid JSON value: " + token);
+                    }
+                }
+            };
+        }
+
+        private void skipWhitespace() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+
+        private boolean peek(char c) {
+            if (position < text.length() && text.charAt(position) == c) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char c) throws IOException {
+            skipWhitespace();
+            if (!peek(c)) {
+                throw new IOException("Expected '" + c + "' at " + position);
+            }
+        }
+    }
+}
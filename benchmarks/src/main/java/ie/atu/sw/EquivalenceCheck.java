@@ -0,0 +1,378 @@
+package ie.atu.sw;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Checks that the faster paths give exactly the same output as the ones they replace, on the synthetic data.
+ *
+ * <pre>
+ *   java -cp target/benchmarks.jar ie.atu.sw.EquivalenceCheck
+ * </pre>
+ *
+ * <p>The {@link Tokenizer} is compared against the split-on-spaces batches (-Dsimplifier.tokenizer=split). On plain
+ * text (lowercase words, single spaces, "\n") both must give the same output. The text is then decorated with
+ * capitals, punctuation, tabs, double spaces and "\r\n" line breaks, which the split path doesn't understand: the
+ * tokenizer's output must be the split path's output for the plain line with the same decoration. Both the in-memory
+ * path and the file pipeline (several chunks) are checked, with every word new and then with every word seen.</p>
+ *
+ * <p>The {@link ShardedSearch} is compared against the exact search with two {@link ShardWorker}s in this process on
+ * localhost, for every embedding word, from one caller, from a compute task and from four callers at once. A
+ * connection is then cut: the search in progress fails, and the next one must connect that shard again (and only
+ * that one) and give the same rows. The workers must also refuse a batch larger than {@link ShardWorker#MAX_BATCH}
+ * and a shard too large to allocate.</p>
+ *
+ * <p>The exit code is 1 if any check fails, so it can be used as a build gate.</p>
+ */
+public final class EquivalenceCheck {
+    private EquivalenceCheck() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        String embeddingsFile = SyntheticData.embeddings(20_000, 50, 1).toString();
+        String targetsFile = SyntheticData.targets(1000).toString();
+        List<String> corpus = Files.readAllLines(SyntheticData.corpus(2000, 12, 20_000, 2));
+
+        // The loaders print progress, the results go to the real output
+        PrintStream out = System.out;
+        SyntheticData.quiet();
+        DataLoadingManager dataManager = new DataLoadingManager();
+        dataManager.loadWordEmbeddings(embeddingsFile);
+        dataManager.loadGoogle1000Words(targetsFile);
+
+        int failures = checkTokenizer(out, dataManager, corpus) + checkShards(out, dataManager);
+        out.println(failures == 0 ? "All checks passed" : failures + " checks failed");
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    /**
+     * Compares the tokenizer against the split path.
+     *
+     * @return The number of failed checks.
+     */
+    private static int checkTokenizer(PrintStream out, DataLoadingManager dataManager, List<String> corpus)
+            throws IOException {
+        EmbeddingStore store = dataManager.wordEmbeddings;
+        VocabularyIndex index = dataManager.googleIndex;
+
+        // The reference: every plain line through the split path
+        TextSimplifier split = new TextSimplifier(new SimilarityResolver(store, index), store, true);
+        String plain = String.join("\n", corpus) + "\n";
+        String[] expectedLines = split.simplify(plain).split("\n", -1);
+
+        // The same lines decorated, and what the tokenizer should make of them
+        StringBuilder decorated = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < corpus.size(); i++) {
+            String ending = i % 3 == 0 ? "\r\n" : "\n";
+            decorated.append(decorate(corpus.get(i).split(" "), i)).append(ending);
+            expected.append(decorate(expectedLines[i].split(" "), i)).append(ending);
+        }
+
+        int failures = 0;
+        Path input = Files.createTempFile(SyntheticData.DIRECTORY, "check", ".txt");
+        Path output = Files.createTempFile(SyntheticData.DIRECTORY, "check", ".out");
+        try {
+            Files.writeString(input, decorated.toString());
+            for (boolean warm : new boolean[]{false, true}) {
+                // A new simplifier for every check, seeing every word for the first time or after a warm up
+                String pass = warm ? "seen words" : "new words";
+                String warmUp = warm ? decorated.toString() : null;
+
+                failures += compare(out, "tokenizer, plain text, " + pass, split.simplify(plain),
+                        tokenizer(store, index, warmUp).simplify(plain));
+                failures += compare(out, "tokenizer, decorated text, " + pass, expected.toString(),
+                        tokenizer(store, index, warmUp).simplify(decorated.toString()));
+
+                tokenizer(store, index, warmUp).simplifyFile(input.toString(), output.toString(),
+                        SimplificationJob.unlimited());
+                failures += compare(out, "tokenizer, decorated file, " + pass, expected.toString(),
+                        Files.readString(output));
+            }
+        } finally {
+            Files.deleteIfExists(input);
+            Files.deleteIfExists(output);
+        }
+        return failures;
+    }
+
+    // A simplifier on the tokenizer path, which has seen the words of the warm up text if there is one
+    private static TextSimplifier tokenizer(EmbeddingStore store, VocabularyIndex index, String warmUp) {
+        TextSimplifier simplifier = new TextSimplifier(new SimilarityResolver(store, index), store, false);
+        if (warmUp != null) {
+            simplifier.simplify(warmUp);
+        }
+        return simplifier;
+    }
+
+    /**
+     * Puts case, punctuation and spacing on the words of a line, the same way for the input and the expected output.
+     * The words are "w123" or "unknown123", so a capital first letter also counts as all capitals.
+     *
+     * @param words   The words of a line.
+     * @param variant Picks the decoration.
+     * @return The decorated line.
+     */
+    private static String decorate(String[] words, int variant) {
+        List<String> decorated = new ArrayList<>(words.length);
+        for (int w = 0; w < words.length; w++) {
+            String word = words[w];
+            if (word.isEmpty()) {
+                decorated.add(word);
+                continue;
+            }
+            switch ((variant + w) % 6) {
+                case 0 -> word = Character.toUpperCase(word.charAt(0)) + word.substring(1);
+                case 1 -> word = word.toUpperCase();
+                case 2 -> word = "\"" + word + "\"";
+                case 3 -> word = word + ",";
+                case 4 -> word = "(" + word + ")";
+                default -> {
+                }
+            }
+            decorated.add(word);
+        }
+        String separator = variant % 4 == 0 ? "  " : variant % 4 == 1 ? "\t" : " ";
+        return String.join(separator, decorated) + (variant % 2 == 0 ? "." : "!?");
+    }
+
+    /**
+     * Compares the sharded search with two local workers against the exact search.
+     *
+     * @return The number of failed checks.
+     */
+    private static int checkShards(PrintStream out, DataLoadingManager dataManager) throws IOException {
+        VocabularyIndex index = dataManager.googleIndex;
+        List<InetSocketAddress> workers = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            ShardWorker worker = new ShardWorker(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            workers.add(worker.address());
+            Thread.ofVirtual().start(() -> {
+                try {
+                    worker.serve();
+                } catch (IOException ignored) {
+                    // Stops with the check
+                }
+            });
+        }
+
+        // Every embedding word as a query
+        String[] words = dataManager.wordEmbeddings.words();
+        float[][] queries = new float[words.length][];
+        for (int i = 0; i < words.length; i++) {
+            queries[i] = index.normalize(dataManager.wordEmbeddings.get(words[i]));
+        }
+        int[] expected = NearestNeighbourSearch.exact(index).nearestAll(queries);
+
+        int failures = 0;
+        try (ShardedSearch sharded = ShardedSearch.connect(index, workers)) {
+            failures += compare(out, "sharded search, one caller", expected, sharded.nearestAll(queries));
+            try {
+                // The way the simplifier calls it, waiting on the workers from a compute thread
+                failures += compare(out, "sharded search, from the compute pool", expected,
+                        ExecutionModel.compute().submit(() -> sharded.nearestAll(queries)).get());
+            } catch (ExecutionException | InterruptedException e) {
+                throw new IOException("Sharded search failed", e);
+            }
+
+            // Four callers sharing the connections, each with a quarter of the queries
+            int[] rows = new int[queries.length];
+            try (var callers = ExecutionModel.newIoExecutor()) {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int c = 0; c < 4; c++) {
+                    int from = queries.length * c / 4;
+                    int to = queries.length * (c + 1) / 4;
+                    futures.add(callers.submit(() -> System.arraycopy(
+                            sharded.nearestAll(Arrays.copyOfRange(queries, from, to)), 0, rows, from, to - from)));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } catch (ExecutionException | InterruptedException e) {
+                throw new IOException("Sharded search failed", e);
+            }
+            failures += compare(out, "sharded search, four callers at once", expected, rows);
+        }
+
+        // The first worker behind a relay that can cut its connections
+        Relay relay = new Relay(workers.get(0));
+        try (ShardedSearch sharded = ShardedSearch.connect(index, List.of(relay.address(), workers.get(1)))) {
+            Metrics.Counter reconnects = Metrics.counter("shards.reconnects");
+            long before = reconnects.sum();
+            relay.cut();
+            try {
+                sharded.nearestAll(queries);
+            } catch (UncheckedIOException expectedFailure) {
+                // The cut connection
+            }
+            failures += compare(out, "sharded search, after a cut connection", expected, sharded.nearestAll(queries));
+            long reconnected = reconnects.sum() - before;
+            boolean one = reconnected == 1;
+            out.println((one ? "PASS " : "FAIL ") + "sharded search, shards connected again: " + reconnected);
+            failures += one ? 0 : 1;
+        } finally {
+            relay.close();
+        }
+
+        int dimensions = index.dimensions;
+        failures += refused(out, "shard worker, batch of " + (ShardWorker.MAX_BATCH + 1), workers.get(0), 1,
+                dimensions, ShardWorker.MAX_BATCH + 1);
+        failures += refused(out, "shard worker, shard of " + Integer.MAX_VALUE + " rows", workers.get(0),
+                Integer.MAX_VALUE, dimensions, 0);
+        return failures;
+    }
+
+    /**
+     * Passes connections through to a worker, until they are cut.
+     */
+    private static final class Relay {
+        private final ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        private final List<Socket> sockets = new CopyOnWriteArrayList<>();
+
+        Relay(InetSocketAddress worker) throws IOException {
+            Thread.ofVirtual().start(() -> {
+                try {
+                    while (true) {
+                        Socket client = server.accept();
+                        Socket upstream = new Socket(worker.getAddress(), worker.getPort());
+                        sockets.add(client);
+                        sockets.add(upstream);
+                        pipe(client, upstream);
+                        pipe(upstream, client);
+                    }
+                } catch (IOException ignored) {
+                    // Closed with the check
+                }
+            });
+        }
+
+        InetSocketAddress address() {
+            return (InetSocketAddress) server.getLocalSocketAddress();
+        }
+
+        // Closes the connections so far, new ones still get through
+        void cut() throws IOException {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+            sockets.clear();
+        }
+
+        void close() throws IOException {
+            server.close();
+            cut();
+        }
+
+        private static void pipe(Socket from, Socket to) {
+            Thread.ofVirtual().start(() -> {
+                try {
+                    from.getInputStream().transferTo(to.getOutputStream());
+                } catch (IOException ignored) {
+                    // Cut
+                }
+            });
+        }
+    }
+
+    /**
+     * Sends a worker a shard of the given size and, if it is accepted, a batch of the given size, and checks that the
+     * worker closes the connection instead of answering.
+     *
+     * @return 1 if the worker answered, otherwise 0.
+     */
+    private static int refused(PrintStream out, String check, InetSocketAddress worker, int rows, int dimensions,
+                               int batch) throws IOException {
+        try (Socket socket = new Socket()) {
+            socket.connect(worker, 10_000);
+            socket.setSoTimeout(10_000);
+            DataOutputStream request = new DataOutputStream(socket.getOutputStream());
+            DataInputStream reply = new DataInputStream(socket.getInputStream());
+
+            request.writeInt(ShardWorker.MAGIC);
+            request.writeInt(ShardWorker.VERSION);
+            request.writeUTF(SimilarityKernel.select().name());
+            request.writeInt(0);
+            request.writeInt(rows);
+            request.writeInt(dimensions);
+            if (batch > 0) {
+                // A real shard, then the batch header alone: a worker that reads the batch waits for the vectors
+                ShardWorker.writeFloats(request, new float[rows * dimensions], 0, rows * dimensions);
+                request.flush();
+                reply.readInt();
+                reply.readUTF();
+                reply.readByte();
+                request.writeByte(ShardWorker.SEARCH);
+                request.writeInt(batch);
+            }
+            request.flush();
+
+            boolean closed = reply.read() < 0;
+            out.println((closed ? "PASS " : "FAIL ") + check + (closed ? " refused" : " accepted"));
+            return closed ? 0 : 1;
+        } catch (SocketTimeoutException e) {
+            out.println("FAIL " + check + ": the worker kept the connection open");
+            return 1;
+        } catch (SocketException e) {
+            // Reset by the worker
+            out.println("PASS " + check + " refused");
+            return 0;
+        }
+    }
+
+    /**
+     * Prints the result of one check, with the first query that got a different row.
+     *
+     * @return 1 if the rows differ, otherwise 0.
+     */
+    private static int compare(PrintStream out, String check, int[] expected, int[] actual) {
+        int query = Arrays.mismatch(expected, actual);
+        if (query < 0) {
+            out.println("PASS " + check);
+            return 0;
+        }
+        out.println("FAIL " + check + ", query " + query + ": expected row "
+                + (query < expected.length ? expected[query] : "<end>") + ", got "
+                + (query < actual.length ? actual[query] : "<end>"));
+        return 1;
+    }
+
+    /**
+     * Prints the result of one check, with the first line that differs.
+     *
+     * @return 1 if the texts differ, otherwise 0.
+     */
+    private static int compare(PrintStream out, String check, String expected, String actual) {
+        if (expected.equals(actual)) {
+            out.println("PASS " + check);
+            return 0;
+        }
+        String[] expectedLines = expected.split("\n", -1);
+        String[] actualLines = actual.split("\n", -1);
+        int line = 0;
+        while (line < Math.min(expectedLines.length, actualLines.length)
+                && expectedLines[line].equals(actualLines[line])) {
+            line++;
+        }
+        out.println("FAIL " + check + ", line " + (line + 1) + ":");
+        out.println("  expected: " + (line < expectedLines.length ? expectedLines[line] : "<end>"));
+        out.println("  actual:   " + (line < actualLines.length ? actualLines[line] : "<end>"));
+        return 1;
+    }
+}
@@ -0,0 +1,69 @@
+package ie.atu.sw;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the compute pools of {@link ExecutionModel} on the CPU heavy stages: parsing the embeddings, simplifying
+ * a document with no cache (every word is a full scan) and compiling a replacement table. "virtual" is the old setup
+ * with a virtual thread for every task.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class ExecutorBenchmark {
+    @Param({"virtual", "forkjoin", "platform"})
+    String pool;
+
+    @Param({"300"})
+    int dimensions;
+
+    private String embeddingsFile;
+    private String inputFile;
+    private String outputFile;
+    private DataLoadingManager dataManager;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        ExecutionModel.use(pool, Runtime.getRuntime().availableProcessors());
+        embeddingsFile = SyntheticData.embeddings(50_000, dimensions, 1).toString();
+        String targetsFile = SyntheticData.targets(1000).toString();
+        inputFile = SyntheticData.corpus(5_000, 12, 50_000, 2).toString();
+        outputFile = Files.createTempFile(SyntheticData.DIRECTORY, "output", ".txt").toString();
+        SyntheticData.quiet();
+
+        dataManager = new DataLoadingManager();
+        dataManager.loadWordEmbeddings(embeddingsFile);
+        dataManager.loadGoogle1000Words(targetsFile);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(Path.of(outputFile));
+        Files.deleteIfExists(Path.of(outputFile + ".table"));
+    }
+
+    @Benchmark
+    public EmbeddingStore parseEmbeddings() throws IOException {
+        DataLoadingManager loading = new DataLoadingManager();
+        loading.loadWordEmbeddings(embeddingsFile);
+        return loading.wordEmbeddings;
+    }
+
+    @Benchmark
+    public void simplifyUncached() throws IOException {
+        new TextSimplifier(dataManager.wordEmbeddings, dataManager.googleIndex).simplifyText(inputFile, outputFile);
+    }
+
+    @Benchmark
+    public void compileTable() throws IOException {
+        ReplacementTable.compile(dataManager, 0, outputFile + ".table");
+    }
+}
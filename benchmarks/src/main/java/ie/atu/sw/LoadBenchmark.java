@@ -0,0 +1,62 @@
+package ie.atu.sw;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures loading the embeddings (text and binary) and the Google-1000 list.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class LoadBenchmark {
+    @Param({"20000"})
+    int words;
+
+    @Param({"50", "300"})
+    int dimensions;
+
+    private String textFile;
+    private String binaryFile;
+    private String targetsFile;
+    private EmbeddingStore loaded;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        textFile = SyntheticData.embeddings(words, dimensions, 1).toString();
+        binaryFile = SyntheticData.binaryEmbeddings(SyntheticData.embeddings(words, dimensions, 1)).toString();
+        targetsFile = SyntheticData.targets(1000).toString();
+        SyntheticData.quiet();
+
+        DataLoadingManager dataManager = new DataLoadingManager();
+        dataManager.loadWordEmbeddings(textFile);
+        loaded = dataManager.wordEmbeddings;
+    }
+
+    @Benchmark
+    public EmbeddingStore loadTextEmbeddings() throws IOException {
+        DataLoadingManager dataManager = new DataLoadingManager();
+        dataManager.loadWordEmbeddings(textFile);
+        return dataManager.wordEmbeddings;
+    }
+
+    @Benchmark
+    public EmbeddingStore loadBinaryEmbeddings() throws IOException {
+        DataLoadingManager dataManager = new DataLoadingManager();
+        dataManager.loadWordEmbeddings(binaryFile);
+        return dataManager.wordEmbeddings;
+    }
+
+    @Benchmark
+    public VocabularyIndex loadGoogle1000Words() throws IOException {
+        DataLoadingManager dataManager = new DataLoadingManager();
+        dataManager.wordEmbeddings = loaded;
+        dataManager.loadGoogle1000Words(targetsFile);
+        return dataManager.googleIndex;
+    }
+}
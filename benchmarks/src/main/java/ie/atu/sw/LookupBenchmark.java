@@ -0,0 +1,78 @@
+package ie.atu.sw;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures word lookups: the old hash map of double[], the packed store, and the {@link WordTable} straight from a
+ * slice of UTF-8 bytes without making a String. The map gets the hash codes of its String keys for free here, as
+ * the same queries are used every time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LookupBenchmark {
+    @Param({"400000"})
+    int words;
+
+    // Words looked up per operation, about 1 in 10 are missing
+    private static final int LOOKUPS = 1000;
+
+    private Map<String, double[]> map;
+    private PackedEmbeddingStore store;
+    private String[] queries;
+    private byte[] lineBytes;
+    private int[] starts;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        map = new HashMap<>();
+        for (int word = 0; word < words; word++) {
+            map.put("w" + word, new double[]{word});
+        }
+        store = PackedEmbeddingStore.pack(map);
+
+        // The queries, also joined into one line of bytes as a tokenizer would see them
+        Random random = new Random(7);
+        queries = new String[LOOKUPS];
+        StringBuilder joined = new StringBuilder();
+        starts = new int[LOOKUPS + 1];
+        for (int i = 0; i < LOOKUPS; i++) {
+            queries[i] = (random.nextInt(10) == 0 ? "x" : "w") + random.nextInt(words);
+            starts[i] = joined.length();
+            joined.append(queries[i]).append(' ');
+        }
+        starts[LOOKUPS] = joined.length();
+        lineBytes = joined.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public void hashMap(Blackhole blackhole) {
+        for (String query : queries) {
+            blackhole.consume(map.get(query));
+        }
+    }
+
+    @Benchmark
+    public void wordTableString(Blackhole blackhole) {
+        for (String query : queries) {
+            blackhole.consume(store.row(query));
+        }
+    }
+
+    @Benchmark
+    public void wordTableByteSlice(Blackhole blackhole) {
+        for (int i = 0; i < LOOKUPS; i++) {
+            blackhole.consume(store.row(lineBytes, starts[i], starts[i + 1] - 1));
+        }
+    }
+}
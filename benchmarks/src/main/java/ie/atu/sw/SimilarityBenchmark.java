@@ -0,0 +1,110 @@
+package ie.atu.sw;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures one closest word search across vector lengths and vocabulary sizes: the original map scan, the flat
+ * index scan (scalar and, when available, Vector API), the batched top-k search and the pruned search.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class SimilarityBenchmark {
+    private static final int QUERIES = 256;
+
+    @Param({"50", "100", "300"})
+    int dimensions;
+
+    @Param({"1000", "10000"})
+    int vocabulary;
+
+    private ConcurrentHashMap<String, double[]> googleWords;
+    private VocabularyIndex index;
+    private double[][] queries;
+    private float[][] normalized;
+
+    private CosineSimilarityCalculator calculator;
+    private CosineSimilarityCalculator scalarCalculator;
+    private ExactSearch exactSearch;
+    private PrunedSearch prunedSearch;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(7);
+        googleWords = new ConcurrentHashMap<>();
+        List<String> words = new ArrayList<>();
+        for (int word = 0; word < vocabulary; word++) {
+            googleWords.put("w" + word, gaussian(random));
+            words.add("w" + word);
+        }
+        index = VocabularyIndex.build(words, googleWords);
+
+        queries = new double[QUERIES][];
+        normalized = new float[QUERIES][];
+        for (int i = 0; i < QUERIES; i++) {
+            queries[i] = gaussian(random);
+            normalized[i] = index.normalize(queries[i]);
+        }
+
+        calculator = new CosineSimilarityCalculator();
+        scalarCalculator = new CosineSimilarityCalculator(new ScalarSimilarityKernel());
+        exactSearch = new ExactSearch(index);
+        prunedSearch = new PrunedSearch(index);
+    }
+
+    private double[] gaussian(Random random) {
+        double[] vector = new double[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            vector[i] = random.nextGaussian();
+        }
+        return vector;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public void mapScan(Blackhole blackhole) {
+        for (double[] query : queries) {
+            blackhole.consume(calculator.closestWord(query, googleWords));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public void indexScanScalar(Blackhole blackhole) {
+        for (double[] query : queries) {
+            blackhole.consume(scalarCalculator.closestWord(query, index));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public void indexScan(Blackhole blackhole) {
+        for (double[] query : queries) {
+            blackhole.consume(calculator.closestWord(query, index));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public ExactSearch.Result[] batchTopK() {
+        return exactSearch.topK(normalized, 1);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public void prunedScan(Blackhole blackhole) {
+        for (float[] query : normalized) {
+            blackhole.consume(prunedSearch.nearest(query));
+        }
+    }
+}
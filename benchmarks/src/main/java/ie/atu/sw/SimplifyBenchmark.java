@@ -0,0 +1,60 @@
+package ie.atu.sw;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures simplifying a whole synthetic document, end to end from the input file to the output file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class SimplifyBenchmark {
+    @Param({"20000"})
+    int lines;
+
+    @Param({"300"})
+    int dimensions;
+
+    private DataLoadingManager dataManager;
+    private String inputFile;
+    private String outputFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        String embeddingsFile = SyntheticData.embeddings(50_000, dimensions, 1).toString();
+        String targetsFile = SyntheticData.targets(1000).toString();
+        inputFile = SyntheticData.corpus(lines, 12, 50_000, 2).toString();
+        outputFile = Files.createTempFile(SyntheticData.DIRECTORY, "output", ".txt").toString();
+        SyntheticData.quiet();
+
+        dataManager = new DataLoadingManager();
+        dataManager.loadWordEmbeddings(embeddingsFile);
+        dataManager.loadGoogle1000Words(targetsFile);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(Path.of(outputFile));
+    }
+
+    @Benchmark
+    public void simplifyUncached() throws IOException {
+        new TextSimplifier(dataManager.wordEmbeddings, dataManager.googleIndex).simplifyText(inputFile, outputFile);
+    }
+
+    @Benchmark
+    public void simplifyWithCache() throws IOException {
+        // A fresh cache per document, so this measures one cold file
+        ReplacementCache cache = new ReplacementCache(50_000);
+        WordResolver resolver = new SimilarityResolver(dataManager.wordEmbeddings, dataManager.googleIndex);
+        new TextSimplifier(cache.wrap(resolver)).simplifyText(inputFile, outputFile);
+    }
+}
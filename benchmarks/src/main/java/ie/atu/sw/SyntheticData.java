@@ -0,0 +1,161 @@
+package ie.atu.sw;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Generates reproducible embeddings, target lists and input text, so the benchmarks run offline and give
+ * comparable numbers on every machine. The same arguments always produce the same files.
+ */
+public final class SyntheticData {
+    // Where generated files are kept between benchmark runs
+    static final Path DIRECTORY = Path.of(System.getProperty("java.io.tmpdir"), "text-simplifier-bench");
+
+    private SyntheticData() {
+    }
+
+    /**
+     * Writes an embeddings file in the text format ("word, 0.1, 0.2, ...") with Gaussian vectors. Words are named
+     * w0, w1, ... so the target list and the corpus can refer to them.
+     *
+     * @param words      The number of words.
+     * @param dimensions The length of each vector.
+     * @param seed       The random seed.
+     * @return The path of the file (reused if it already exists).
+     * @throws IOException If the file can't be written.
+     */
+    static Path embeddings(int words, int dimensions, long seed) throws IOException {
+        Path file = DIRECTORY.resolve("embeddings-" + words + "x" + dimensions + "-" + seed + ".txt");
+        if (Files.exists(file)) {
+            return file;
+        }
+
+        Files.createDirectories(DIRECTORY);
+        Random random = new Random(seed);
+        Path temp = Files.createTempFile(DIRECTORY, "embeddings", ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp)) {
+            for (int word = 0; word < words; word++) {
+                writer.write("w" + word);
+                for (int i = 0; i < dimensions; i++) {
+                    writer.write(String.format(Locale.ROOT, ", %.6f", random.nextGaussian() * 0.4));
+                }
+                writer.newLine();
+            }
+        }
+        return Files.move(temp, file);
+    }
+
+    /**
+     * Writes the binary version of an embeddings file.
+     *
+     * @param textFile The text embeddings file.
+     * @return The path of the binary file (reused if it already exists).
+     * @throws IOException If the file can't be converted.
+     */
+    static Path binaryEmbeddings(Path textFile) throws IOException {
+        Path file = Path.of(textFile.toString().replace(".txt", ".bin"));
+        if (!Files.exists(file)) {
+            MappedEmbeddingStore.convert(textFile.toString(), file.toString());
+        }
+        return file;
+    }
+
+    /**
+     * Writes a target word list with the first words of the embeddings (w0 ... wN-1).
+     *
+     * @param targets The number of target words.
+     * @return The path of the file.
+     * @throws IOException If the file can't be written.
+     */
+    static Path targets(int targets) throws IOException {
+        Path file = DIRECTORY.resolve("targets-" + targets + ".txt");
+        if (Files.exists(file)) {
+            return file;
+        }
+
+        Files.createDirectories(DIRECTORY);
+        Path temp = Files.createTempFile(DIRECTORY, "targets", ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp)) {
+            for (int word = 0; word < targets; word++) {
+                writer.write("w" + word);
+                writer.newLine();
+            }
+        }
+        return Files.move(temp, file);
+    }
+
+    /**
+     * Writes an input text where the words follow a Zipf distribution over the vocabulary, like natural text (a few
+     * words are very common, most are rare). About one token in twenty is unknown to the embeddings.
+     *
+     * @param lines        The number of lines.
+     * @param wordsPerLine The number of words on each line.
+     * @param vocabulary   The number of embedding words to draw from.
+     * @param seed         The random seed.
+     * @return The path of the file (reused if it already exists).
+     * @throws IOException If the file can't be written.
+     */
+    static Path corpus(int lines, int wordsPerLine, int vocabulary, long seed) throws IOException {
+        Path file = DIRECTORY.resolve("corpus-" + lines + "x" + wordsPerLine + "-" + vocabulary + "-" + seed + ".txt");
+        if (Files.exists(file)) {
+            return file;
+        }
+
+        // Cumulative Zipf weights (s = 1)
+        double[] cumulative = new double[vocabulary];
+        double total = 0;
+        for (int rank = 0; rank < vocabulary; rank++) {
+            total += 1.0 / (rank + 1);
+            cumulative[rank] = total;
+        }
+
+        Files.createDirectories(DIRECTORY);
+        Random random = new Random(seed);
+        Path temp = Files.createTempFile(DIRECTORY, "corpus", ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp)) {
+            for (int line = 0; line < lines; line++) {
+                for (int i = 0; i < wordsPerLine; i++) {
+                    if (i > 0) {
+                        writer.write(' ');
+                    }
+                    if (random.nextInt(20) == 0) {
+                        writer.write("unknown" + random.nextInt(1000));
+                        continue;
+                    }
+                    int rank = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+                    writer.write("w" + (rank < 0 ? -rank - 1 : rank));
+                }
+                writer.newLine();
+            }
+        }
+        return Files.move(temp, file);
+    }
+
+    // Stops the loaders' progress messages from flooding the benchmark output
+    static void quiet() {
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    /**
+     * Generates a data set from the command line, for use outside of JMH.
+     *
+     * <pre>java -cp benchmarks.jar ie.atu.sw.SyntheticData [words] [dimensions] [targets] [lines]</pre>
+     *
+     * @param args Optional sizes.
+     * @throws IOException If the files can't be written.
+     */
+    public static void main(String[] args) throws IOException {
+        int words = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        int dimensions = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+        int targets = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        int lines = args.length > 3 ? Integer.parseInt(args[3]) : 10_000;
+
+        System.out.println(embeddings(words, dimensions, 1));
+        System.out.println(targets(targets));
+        System.out.println(corpus(lines, 12, words, 2));
+    }
+}
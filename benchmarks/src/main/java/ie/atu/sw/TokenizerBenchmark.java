@@ -0,0 +1,78 @@
+package ie.atu.sw;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the steady state of the simplification hot path on one chunk of text, once every word has been seen:
+ * the {@link Tokenizer} against the old split-on-spaces batch.
+ *
+ * <p>Run with the GC profiler to check allocations, the tokenizer should report close to 0 B/op for
+ * gc.alloc.rate.norm:</p>
+ * <pre>
+ *   java -jar target/benchmarks.jar TokenizerBenchmark -prof gc
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class TokenizerBenchmark {
+    @Param({"50"})
+    int dimensions;
+
+    private Tokenizer tokenizer;
+    private TextChunk chunk;
+    private int length;
+
+    private TextSimplifier splitter;
+    private String[] lines;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        String embeddingsFile = SyntheticData.embeddings(20_000, dimensions, 1).toString();
+        String targetsFile = SyntheticData.targets(1000).toString();
+        List<String> corpus = Files.readAllLines(SyntheticData.corpus(2000, 12, 20_000, 2));
+        SyntheticData.quiet();
+
+        DataLoadingManager dataManager = new DataLoadingManager();
+        dataManager.loadWordEmbeddings(embeddingsFile);
+        dataManager.loadGoogle1000Words(targetsFile);
+
+        // The same text for both, about one pipeline chunk
+        String text = String.join("\n", corpus) + "\n";
+        length = Math.min(text.length(), 64 * 1024);
+        text = text.substring(0, text.lastIndexOf('\n', length - 1) + 1);
+        length = text.length();
+        lines = text.split("\n");
+
+        WordResolver resolver = new SimilarityResolver(dataManager.wordEmbeddings, dataManager.googleIndex);
+        tokenizer = new Tokenizer(resolver, dataManager.wordEmbeddings);
+        chunk = new TextChunk(length);
+        text.getChars(0, length, chunk.input, 0);
+        chunk.inputLength = length;
+
+        splitter = new TextSimplifier(new ReplacementCache(50_000).wrap(resolver));
+
+        // See every word once, so only the steady state is measured
+        tokenizer.simplify(chunk, length);
+        splitter.simplifyBatch(lines, lines.length, SimplificationJob.unlimited());
+    }
+
+    @Benchmark
+    public int tokenizer() {
+        tokenizer.simplify(chunk, length);
+        return chunk.outputLength;
+    }
+
+    @Benchmark
+    public String[] splitOnSpaces() {
+        return splitter.simplifyBatch(lines, lines.length, SimplificationJob.unlimited());
+    }
+}
@@ -0,0 +1,204 @@
+package ie.atu.sw;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
+
+/**
+ * Simplifies many files with one {@link TextSimplifier}, so the data is only loaded once.
+ *
+ * <p>Every file runs in its own virtual thread, but a semaphore limits how many are open at the same time. Each
+ * output is written to a ".part" file first and renamed when it is complete, so an output that exists is always
+ * complete. Running the same job again skips those files and carries on with the rest.</p>
+ */
+public class BatchSimplifier {
+    // Suffix of outputs that are still being written
+    private static final String PART_SUFFIX = ".part";
+
+    /**
+     * What a batch run did.
+     *
+     * @param files   Files simplified in this run.
+     * @param skipped Files skipped because their output was already complete.
+     * @param failed  Files that could not be simplified.
+     * @param words   Words written.
+     * @param bytes   Bytes read from the simplified files.
+     * @param nanos   Time taken.
+     */
+    public record Summary(int files, int skipped, int failed, long words, long bytes, long nanos) {
+        @Override
+        public String toString() {
+            double seconds = Math.max(1e-9, nanos / 1e9);
+            return String.format("Files: %d simplified, %d skipped, %d failed | Words: %d | Time: %.2f s | "
+                            + "Throughput: %.0f words/s, %.2f MB/s", files, skipped, failed, words, seconds,
+                    words / seconds, bytes / seconds / (1024 * 1024));
+        }
+    }
+
+    /**
+     * The input files of a batch.
+     *
+     * @param base  The directory the files are relative to.
+     * @param files Paths relative to the base, the same paths are used under the output directory.
+     */
+    public record Inputs(Path base, List<Path> files) {
+    }
+
+    private final TextSimplifier simplifier;
+    private final int maxOpenFiles;
+
+    // Constructor
+    public BatchSimplifier(TextSimplifier simplifier, int maxOpenFiles) {
+        this.simplifier = simplifier;
+        this.maxOpenFiles = Math.max(1, maxOpenFiles);
+    }
+
+    /**
+     * Finds the input files. A directory gives every file under it. Anything else is a glob pattern such as
+     * "docs/*.txt" or "docs/**.txt", matched against paths below the part of the pattern without wildcards.
+     *
+     * @param pattern   An input directory or glob pattern.
+     * @param outputDir The output directory, files under it are never inputs.
+     * @return The directory the paths are relative to, and the sorted relative paths of the input files.
+     * @throws IOException If a directory can't be read.
+     */
+    public static Inputs findInputs(String pattern, Path outputDir) throws IOException {
+        Path base;
+        PathMatcher matcher;
+        if (Files.isDirectory(Path.of(pattern))) {
+            base = Path.of(pattern);
+            matcher = path -> true;
+        } else {
+            // Everything up to the first directory with a wildcard is walked
+            Path full = Path.of(pattern);
+            Path root = full.getRoot();
+            Path fixed = root;
+            int first = 0;
+            while (first < full.getNameCount() - 1 && !hasWildcard(full.getName(first).toString())) {
+                fixed = fixed == null ? full.getName(first) : fixed.resolve(full.getName(first));
+                first++;
+            }
+            base = fixed == null ? Path.of(".") : fixed;
+            matcher = FileSystems.getDefault().getPathMatcher("glob:" + full.subpath(first, full.getNameCount()));
+        }
+
+        Path excluded = outputDir.toAbsolutePath().normalize();
+        List<Path> files = new ArrayList<>();
+        if (Files.isDirectory(base)) {
+            try (Stream<Path> walk = Files.walk(base)) {
+                walk.filter(Files::isRegularFile)
+                        .filter(path -> !path.toAbsolutePath().normalize().startsWith(excluded))
+                        .map(base::relativize)
+                        .filter(matcher::matches)
+                        .sorted()
+                        .forEach(files::add);
+            }
+        }
+        return new Inputs(base, files);
+    }
+
+    /**
+     * Simplifies every input file that doesn't have a complete output yet, showing the progress with
+     * {@link Runner#printProgress(int, int)}.
+     *
+     * <p><b>Big-O Notation is O(w)</b> -> w = Total number of words in the files. Up to maxOpenFiles files are
+     * simplified at the same time.</p>
+     *
+     * @param inputs    The files to simplify.
+     * @param outputDir The directory for the simplified files.
+     * @return The summary of the run.
+     * @throws IOException If the output directory can't be created.
+     */
+    public Summary run(Inputs inputs, Path outputDir) throws IOException {
+        long start = System.nanoTime();
+        Files.createDirectories(outputDir);
+
+        // Outputs that exist are complete, so they are left alone
+        List<Path> todo = new ArrayList<>();
+        for (Path file : inputs.files()) {
+            if (!Files.exists(outputDir.resolve(file.toString()))) {
+                todo.add(file);
+            }
+        }
+        int skipped = inputs.files().size() - todo.size();
+
+        long words = 0;
+        long bytes = 0;
+        List<String> errors = new ArrayList<>();
+
+        // Every file gets a virtual thread, the semaphore decides how many of them work at once
+        Semaphore open = new Semaphore(maxOpenFiles);
+        try (var executor = ExecutionModel.newIoExecutor()) {
+            CompletionService<long[]> completed = new ExecutorCompletionService<>(executor);
+            for (Path file : todo) {
+                completed.submit(() -> {
+                    open.acquire();
+                    try {
+                        Path input = inputs.base().resolve(file);
+                        long written = simplify(input, outputDir.resolve(file.toString()));
+                        return new long[]{written, Files.size(input)};
+                    } finally {
+                        open.release();
+                    }
+                });
+            }
+
+            // Report each file as it finishes, in whatever order that happens
+            for (int done = 1; done <= todo.size(); done++) {
+                try {
+                    long[] result = completed.take().get();
+                    words += result[0];
+                    bytes += result[1];
+                } catch (ExecutionException e) {
+                    errors.add(e.getCause().getMessage());
+                }
+                Runner.printProgress(done, todo.size());
+            }
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+
+        if (!todo.isEmpty()) {
+            System.out.println();
+        }
+        for (String error : errors) {
+            System.out.println("Failed: " + error);
+        }
+        return new Summary(todo.size() - errors.size(), skipped, errors.size(), words, bytes,
+                System.nanoTime() - start);
+    }
+
+    /**
+     * Simplifies one file into a ".part" file and renames it to the output name once it is complete.
+     *
+     * @param input  The input file.
+     * @param output The output file.
+     * @return The number of words written.
+     * @throws IOException If the file can't be simplified, with the input path in the message.
+     */
+    private long simplify(Path input, Path output) throws IOException {
+        Path part = output.resolveSibling(output.getFileName() + PART_SUFFIX);
+        try {
+            if (output.getParent() != null) {
+                Files.createDirectories(output.getParent());
+            }
+            long words = simplifier.simplifyFile(input.toString(), part.toString());
+            try {
+                Files.move(part, output, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(part, output, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return words;
+        } catch (IOException e) {
+            Files.deleteIfExists(part);
+            throw new IOException(input + ": " + e, e);
+        }
+    }
+
+    private static boolean hasWildcard(String name) {
+        return name.contains("*") || name.contains("?") || name.contains("[") || name.contains("{");
+    }
+}
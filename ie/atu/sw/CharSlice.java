@@ -0,0 +1,51 @@
+package ie.atu.sw;
+
+/**
+ * A reusable, read-only view of part of a char[], so a word inside a buffer can be passed as a {@link CharSequence}
+ * (for example to {@link WordTable#row(CharSequence)}) without copying it into a String.
+ *
+ * <p>The view is changed with {@link #set(char[], int, int)}, so it must not be kept or shared between threads.</p>
+ */
+public final class CharSlice implements CharSequence {
+    private char[] chars = new char[0];
+    private int from;
+    private int length;
+
+    /**
+     * Points the view at a new range.
+     *
+     * @param chars The buffer.
+     * @param from  The first char.
+     * @param to    The end of the range (exclusive).
+     * @return This view.
+     */
+    public CharSlice set(char[] chars, int from, int to) {
+        this.chars = chars;
+        this.from = from;
+        this.length = to - from;
+        return this;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return chars[from + index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new String(chars, from + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        return new String(chars, from, length);
+    }
+}
@@ -7,6 +7,18 @@ import java.util.concurrent.ConcurrentHashMap;
  * This class calculates the similarity between 2 words by using the Cosine Similarity algorithm.
  */
 public class CosineSimilarityCalculator {
+    // Inner loop used for the index search (Vector API or scalar)
+    private final SimilarityKernel kernel;
+
+    // Constructor, picks the fastest kernel available
+    public CosineSimilarityCalculator() {
+        this(SimilarityKernel.select());
+    }
+
+    public CosineSimilarityCalculator(SimilarityKernel kernel) {
+        this.kernel = kernel;
+    }
+
     /**
      * Calculates the cosine similarity between two vectors.
      *
@@ -31,8 +43,8 @@ public class CosineSimilarityCalculator {
         // Compute dot product and norms for vectors
         for (int i = 0; i < vector1.length; i++) {
             dotProduct += vector1[i] * vector2[i];
-            normA += Math.pow(vector1[i], 2);
-            normB += Math.pow(vector2[i], 2);
+            normA += vector1[i] * vector1[i];
+            normB += vector2[i] * vector2[i];
         }
 
         // Return similarity (dot product by the product of magnitudes)
@@ -71,4 +83,46 @@ public class CosineSimilarityCalculator {
         }
         return closestWord;
     }
-}
\ No newline at end of file
+
+    /**
+     * Finds the closest match for the target vector from a prebuilt vocabulary index.
+     *
+     * <p>The input vector is normalized once. Every row in the index is already a unit vector, so the cosine
+     * similarity for each candidate is a single dot product over the flat matrix with no map lookups or square
+     * roots. The scan itself is done by the {@link SimilarityKernel}.</p>
+     *
+     * <p><b>Big-O Notation is O(n * m)</b></p> -> n = Number of words in the index and m = Length of each vector.
+     * Same as the map version, but with much less work done per step.
+     *
+     * @param inputWordEmbeddings The vector of the word being simplified.
+     * @param index               The Google-1000 vocabulary index.
+     * @return The closest word from the index based on cosine similarity, or null if the index is empty.
+     */
+    public String closestWord(double[] inputWordEmbeddings, VocabularyIndex index) {
+        int closestRow = closestRow(inputWordEmbeddings, index);
+        return closestRow < 0 ? null : index.word(closestRow);
+    }
+
+    /**
+     * Same search as {@link #closestWord(double[], VocabularyIndex)}, but returns the row of the match in the index.
+     *
+     * @param inputWordEmbeddings The vector of the word being simplified.
+     * @param index               The Google-1000 vocabulary index.
+     * @return The row of the closest word, or -1 if the index is empty.
+     */
+    public int closestRow(double[] inputWordEmbeddings, VocabularyIndex index) {
+        return closestRow(index.normalize(inputWordEmbeddings), index);
+    }
+
+    /**
+     * Same search, for a query that has already been normalized with {@link VocabularyIndex#normalize(double[])}.
+     *
+     * @param query The normalized vector of the word being simplified.
+     * @param index The Google-1000 vocabulary index.
+     * @return The row of the closest word, or -1 if the index is empty.
+     */
+    public int closestRow(float[] query, VocabularyIndex index) {
+        // Dot product of two unit vectors is the cosine similarity
+        return kernel.argmax(query, index.matrix, index.size(), index.dimensions);
+    }
+}
@@ -1,110 +1,149 @@
 package ie.atu.sw;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
 
 /**
  * This class handles all operations related to loading external data into our program.
  */
 public class DataLoadingManager {
-    // Thread-safe hash map to store words and embeddings
-    final ConcurrentHashMap<String, double[]> wordEmbeddings = new ConcurrentHashMap<>();
+    // Words and embeddings (packed or quantized on the heap for text files, memory-mapped for binary files)
+    EmbeddingStore wordEmbeddings;
+
+    // Thread-safe hash map to store the Google-1000 words and embeddings
     final ConcurrentHashMap<String, double[]> googleWords = new ConcurrentHashMap<>();
 
+    // Google-1000 vectors packed into a flat, normalized matrix for fast searching
+    VocabularyIndex googleIndex;
+
     /**
      * This method reads in the words and vectors concurrently from the embeddings.txt file into memory.
      *
-     * <p><b>Big-O Notation is O(n)</b> -> The method uses virtual threads to be more efficient but the task itself is still
-     * dependent on how big the .txt file is. The more lines the longer it should take. For each line we loop through all
-     * embeddings.</p>
+     * <p><b>Big-O Notation is O(n)</b> -> The file is split into one range per compute thread and each range is parsed
+     * as a task on the compute pool (see {@link TextEmbeddingsParser} and {@link ExecutionModel}), but the task itself
+     * is still dependent on how big the .txt file is. The more lines the longer it should take.</p>
+     *
+     * <p>The format is detected automatically. Binary files made by {@link MappedEmbeddingStore#convert} are
+     * memory-mapped instead of parsed, which is O(1) and keeps the vectors off the heap.</p>
      *
-     * @param fileName The path to the text file containing word embeddings.
-     * @throws IOException          If there is an error reading the file.
-     * @throws InterruptedException If thread execution is interrupted during processing.
+     * <p>Text files are kept as a {@link PackedEmbeddingStore}. With -Dsimplifier.storage=int8 or float16 they are
+     * kept as a {@link QuantizedEmbeddingStore} (8x or 4x smaller) instead. With -Dsimplifier.storage=lazy only an
+     * index of the file is read and each vector is parsed when it is first used, see {@link LazyEmbeddingStore}.</p>
+     *
+     * @param fileName The path to the text or binary file containing word embeddings.
+     * @throws IOException If there is an error reading or parsing the file.
      */
     public void loadWordEmbeddings(String fileName) throws IOException {
-        try (BufferedReader reader = new BufferedReader(new FileReader(fileName));
-             // Virtual thread
-             var executor = Executors.newVirtualThreadPerTaskExecutor()) {
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                final String entry = line;
-
-                // Do this for every line
-                executor.submit(() -> {
-                    // Separate items by ", "
-                    String[] parts = entry.split(", ");
-
-                    // The word is always going to be at index 0
-                    String word = parts[0].trim().toLowerCase();
-
-                    // Array to store embeddings
-                    double[] embeddings = new double[parts.length - 1];
-                    for (int i = 1; i < parts.length; i++) {
-                        embeddings[i - 1] = Double.parseDouble(parts[i]);
-                    }
+        LoadEvent event = new LoadEvent();
+        event.begin();
+        long start = System.nanoTime();
 
-                    // Add the word and its embeddings to map
-                    wordEmbeddings.put(word, embeddings);
-                });
-            }
-
-            // Wait for all virtual threads to complete
-            executor.shutdown();
-            executor.awaitTermination(1, java.util.concurrent.TimeUnit.MINUTES);
+        if (MappedEmbeddingStore.isBinary(fileName)) {
+            wordEmbeddings = MappedEmbeddingStore.open(fileName);
+            System.out.println("Total words mapped: " + wordEmbeddings.size());
+        } else if ("lazy".equalsIgnoreCase(System.getProperty("simplifier.storage"))) {
+            // Only the index is read now, vectors are parsed when they are first used
+            wordEmbeddings = LazyEmbeddingStore.open(fileName);
+            System.out.println("Total words indexed: " + wordEmbeddings.size());
+        } else {
+            wordEmbeddings = parseTextEmbeddings(fileName);
 
             // Number of lines read in
             System.out.println("Total words loaded: " + wordEmbeddings.size());
-        } catch (InterruptedException e) {
-            throw new IOException(e);
         }
+
+        // Metrics and JFR event for the phase
+        Metrics.WORDS_LOADED.add(wordEmbeddings.size());
+        Metrics.EMBEDDINGS_LOAD.record(System.nanoTime() - start);
+        event.phase = "embeddings";
+        event.file = fileName;
+        event.words = wordEmbeddings.size();
+        event.bytes = new File(fileName).length();
+        event.commit();
+    }
+
+    // Parses a text embeddings file into the store picked with -Dsimplifier.storage
+    private EmbeddingStore parseTextEmbeddings(String fileName) throws IOException {
+        // Text files are split into line aligned ranges and parsed in parallel
+        Map<String, double[]> parsed = new TextEmbeddingsParser().parse(fileName);
+        String storage = System.getProperty("simplifier.storage", "double");
+        return switch (storage.toLowerCase()) {
+            case "int8" -> QuantizedEmbeddingStore.quantize(parsed, QuantizedEmbeddingStore.Encoding.INT8);
+            case "float16" -> QuantizedEmbeddingStore.quantize(parsed, QuantizedEmbeddingStore.Encoding.FLOAT16);
+            case "double" -> PackedEmbeddingStore.pack(parsed);
+            default -> throw new IllegalArgumentException("Unknown storage: " + storage);
+        };
     }
 
     /**
-     * Loads words from the Google-1000 word list into memory using virtual threads for concurrency.
+     * Loads words from the Google-1000 word list into memory, looking them up on the compute pool.
      *
      * <p>This method reads each line from the google-1000.txt file, trims and converts the word to lowercase,
      * and checks if an embedding exists for it in the wordEmbeddings map. Words with embeddings are added to
      * the googleWords map along with their vectors.</p>
      *
-     * <p><b>Big-O Notation is O(n)</b> -> The method also uses virtual threads to be more efficient but the running time
+     * <p><b>Big-O Notation is O(n)</b> -> The lookups are spread over the compute threads but the running time
      * will depend on how many words are int the file. The overall running time ends up being O(n) but the map look up
      * is O(1).</p>
      *
+     * <p>Once all words are loaded, the googleIndex is built from them in file order.</p>
+     *
      * @param fileName The path to the file containing the Google-1000 word list.
      * @throws IOException If an error occurs while reading the file.
      */
     public void loadGoogle1000Words(String fileName) throws IOException {
-        try (BufferedReader reader = new BufferedReader(new FileReader(fileName));
-             // Virtual thread
-             var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+        LoadEvent event = new LoadEvent();
+        event.begin();
+        long start = System.nanoTime();
 
+        // Keep the file order so the index is the same on every run
+        Set<String> fileOrder = new LinkedHashSet<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(fileName))) {
             String line;
             while ((line = reader.readLine()) != null) {
-                final String word = line.trim().toLowerCase();
+                fileOrder.add(line.trim().toLowerCase());
+            }
+        }
 
-                // Do this for each line/word
-                executor.submit(() -> {
-                    // Check if google-1000 word has corresponding embeddings in our map
-                    if (wordEmbeddings.containsKey(word)) {
-                        googleWords.put(word, wordEmbeddings.get(word));
-                    } else {
-                        System.out.println("Word " + word + " not found");
-                    }
-                });
+        // Looking the words up is CPU work (a lazy store parses the vectors), so it runs on the compute pool
+        List<String> words = new ArrayList<>(fileOrder);
+        ExecutionModel.forEach(words.size(), i -> {
+            // Check if google-1000 word has corresponding embeddings in our map
+            String word = words.get(i);
+            double[] embeddings = wordEmbeddings.get(word);
+            if (embeddings != null) {
+                googleWords.put(word, embeddings);
+            } else {
+                System.out.println("Word " + word + " not found");
+                Metrics.GOOGLE_MISSES.increment();
             }
+        });
 
-            // Wait for all virtual threads to complete
-            executor.shutdown();
-            executor.awaitTermination(1, java.util.concurrent.TimeUnit.MINUTES);
+        System.out.println("Google-1000 words loaded: " + googleWords.size());
 
-            System.out.println("Google-1000 words loaded: " + googleWords.size());
-        } catch (InterruptedException e) {
-            System.err.println("Thread interrupted: " + e.getMessage());
+        // Build the search index from the words that have embeddings
+        List<String> indexed = new ArrayList<>();
+        for (String word : words) {
+            if (googleWords.containsKey(word)) {
+                indexed.add(word);
+            }
         }
+        googleIndex = VocabularyIndex.build(indexed, googleWords);
+
+        // Metrics and JFR event for the phase
+        Metrics.GOOGLE_LOAD.record(System.nanoTime() - start);
+        event.phase = "google1000";
+        event.file = fileName;
+        event.words = googleWords.size();
+        event.bytes = new File(fileName).length();
+        event.commit();
     }
 }
\ No newline at end of file
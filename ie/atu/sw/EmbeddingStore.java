@@ -0,0 +1,38 @@
+package ie.atu.sw;
+
+/**
+ * Read-only access to the word embeddings, however they are stored.
+ */
+public interface EmbeddingStore {
+    /**
+     * Gets the vector for a word.
+     *
+     * @param word The word, already trimmed and in lowercase.
+     * @return The vector, or null if the word has no embeddings.
+     */
+    double[] get(String word);
+
+    default boolean contains(String word) {
+        return get(word) != null;
+    }
+
+    /**
+     * Finds the row number of a word. Every word in the store has a fixed row from 0 to size - 1.
+     *
+     * @param word The word, already in lowercase. It can be a slice of a larger buffer.
+     * @return The row, or -1 if the word has no embeddings.
+     */
+    int row(CharSequence word);
+
+    // The word in a row
+    String word(int row);
+
+    // Number of words in the store
+    int size();
+
+    // Length of every vector
+    int dimensions();
+
+    // Every word in the store, in no particular order
+    String[] words();
+}
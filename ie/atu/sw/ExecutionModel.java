@@ -0,0 +1,224 @@
+package ie.atu.sw;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+/**
+ * Where the work of the application runs.
+ *
+ * <p>There are two kinds of work. Waiting on files, sockets and clients (reading the input, writing the output,
+ * serving requests, one task per batch file) runs on virtual threads, which are cheap to block. Parsing vectors and
+ * searching for the closest word only keep a core busy, so they run on a pool with one platform thread per core: more
+ * threads than cores would only take turns. The hand-off is always the same: an I/O thread submits the CPU work to
+ * {@link #compute()} and waits for the future, and CPU tasks never wait for other CPU tasks, so the pool can't run
+ * out of threads.</p>
+ *
+ * <p>The one exception is a search that asks other processes, the {@link ShardedSearch}: a compute task then waits for
+ * network round trips. It waits with {@link #await(Future)}, which tells the forkjoin pool that the thread is blocked
+ * so the pool can start another one to keep the cores busy. The platform pool can't do that, its thread just waits,
+ * so use the forkjoin or virtual pool with sharded search.</p>
+ *
+ * <p>Selected with -Dsimplifier.compute:</p>
+ * <ul>
+ *     <li>forkjoin (default): a {@link ForkJoinPool} of -Dsimplifier.compute.threads (default one per core).</li>
+ *     <li>platform: a fixed pool of named platform threads ("compute-1", ...) with one shared queue.</li>
+ *     <li>virtual: a virtual thread per task, as before the pools were split, kept to compare against.</li>
+ * </ul>
+ *
+ * <p>Java can't pin threads to cores. To keep the pool on some cores, start the JVM with taskset or numactl and set
+ * -Dsimplifier.compute.threads to the number of cores given.</p>
+ */
+public final class ExecutionModel {
+    private static volatile ExecutorService compute;
+    private static volatile String kind;
+    private static volatile int threads;
+
+    static {
+        Metrics.gauge("executor.computeThreads", () -> threads);
+        Metrics.gauge("executor.computeQueued", ExecutionModel::queued);
+    }
+
+    private ExecutionModel() {
+    }
+
+    /**
+     * The shared pool for CPU work. It is never shut down, so don't close it, wait for the futures instead.
+     *
+     * @return The compute pool.
+     */
+    public static ExecutorService compute() {
+        ExecutorService pool = compute;
+        if (pool == null) {
+            synchronized (ExecutionModel.class) {
+                if (compute == null) {
+                    use(System.getProperty("simplifier.compute", "forkjoin"), Integer.getInteger(
+                            "simplifier.compute.threads", Runtime.getRuntime().availableProcessors()));
+                }
+                pool = compute;
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * A new executor with a virtual thread per task, for work that mostly waits. Close it to wait for its tasks.
+     *
+     * @return The executor.
+     */
+    public static ExecutorService newIoExecutor() {
+        return Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    /**
+     * Replaces the compute pool, for the benchmarks. Tasks already in the old pool still finish.
+     *
+     * <p><b>Big-O Notation is O(t)</b> -> t = Number of threads, which are started when first needed.</p>
+     *
+     * @param pool    forkjoin, platform or virtual.
+     * @param threads The number of threads of the forkjoin and platform pools.
+     * @throws IllegalArgumentException If the pool is unknown.
+     */
+    public static synchronized void use(String pool, int threads) {
+        int size = Math.max(1, threads);
+        ExecutorService created = switch (pool.toLowerCase()) {
+            case "forkjoin" -> new ForkJoinPool(size, ExecutionModel::forkJoinThread, null, false);
+            case "platform" -> platformPool(size);
+            case "virtual" -> Executors.newVirtualThreadPerTaskExecutor();
+            default -> throw new IllegalArgumentException("Unknown compute pool: " + pool);
+        };
+
+        ExecutorService old = compute;
+        compute = created;
+        kind = pool.toLowerCase();
+        ExecutionModel.threads = "virtual".equals(kind) ? 0 : size;
+        if (old != null) {
+            old.shutdown();
+        }
+    }
+
+    // Description for the startup line and reports, for example "forkjoin x4"
+    public static String describe() {
+        compute();
+        return "virtual".equals(kind) ? kind : kind + " x" + threads;
+    }
+
+    // Number of compute threads, or the number of cores for virtual threads
+    public static int parallelism() {
+        compute();
+        return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Runs body(i) for every i in [0, count) on the compute pool, one contiguous slice per thread, and waits. Must
+     * not be called from a compute task.
+     *
+     * <p><b>Big-O Notation is O(count / t)</b> -> t = Number of compute threads, times the cost of the body.</p>
+     *
+     * @param count The number of indexes.
+     * @param body  The work for one index.
+     * @throws RuntimeException If the body fails, with the failure as the cause.
+     */
+    public static void forEach(int count, IntConsumer body) {
+        int slices = Math.min(count, parallelism());
+        if (slices <= 1) {
+            for (int i = 0; i < count; i++) {
+                body.accept(i);
+            }
+            return;
+        }
+
+        List<Future<?>> futures = new ArrayList<>(slices);
+        for (int s = 0; s < slices; s++) {
+            int from = (int) ((long) count * s / slices);
+            int to = (int) ((long) count * (s + 1) / slices);
+            futures.add(compute().submit(() -> {
+                for (int i = from; i < to; i++) {
+                    body.accept(i);
+                }
+            }));
+        }
+        await(futures);
+    }
+
+    // Waits for every future, rethrowing the first failure
+    private static void await(List<Future<?>> futures) {
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException runtime ? runtime : new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Waits for a future from another executor. On a forkjoin thread the wait is a managed block, so the pool can add
+     * a thread for the other tasks in the meantime, anywhere else it is a plain {@link Future#get()}.
+     *
+     * @param future The future to wait for.
+     * @return Its result.
+     * @throws ExecutionException   If the task failed.
+     * @throws InterruptedException If the waiting thread is interrupted.
+     */
+    public static <T> T await(Future<T> future) throws ExecutionException, InterruptedException {
+        if (!future.isDone() && Thread.currentThread() instanceof ForkJoinWorkerThread) {
+            ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                @Override
+                public boolean block() throws InterruptedException {
+                    try {
+                        future.get();
+                    } catch (ExecutionException ignored) {
+                        // Rethrown by the get below
+                    }
+                    return true;
+                }
+
+                @Override
+                public boolean isReleasable() {
+                    return future.isDone();
+                }
+            });
+        }
+        return future.get();
+    }
+
+    private static ForkJoinWorkerThread forkJoinThread(ForkJoinPool pool) {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("compute-" + thread.getPoolIndex());
+        return thread;
+    }
+
+    private static ExecutorService platformPool(int size) {
+        AtomicInteger count = new AtomicInteger();
+        return new ThreadPoolExecutor(size, size, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), task -> {
+            Thread thread = new Thread(task, "compute-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static long queued() {
+        ExecutorService pool = compute;
+        if (pool instanceof ForkJoinPool forkJoin) {
+            return forkJoin.getQueuedSubmissionCount() + forkJoin.getQueuedTaskCount();
+        }
+        if (pool instanceof ThreadPoolExecutor executor) {
+            return executor.getQueue().size();
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,537 @@
+package ie.atu.sw;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Approximate nearest-neighbour search over a {@link VocabularyIndex} using a Hierarchical Navigable Small World
+ * graph (HNSW, Malkov and Yashunin).
+ *
+ * <p>Every word is a node in a layered graph. The top layers are sparse and let the search jump across the
+ * vocabulary quickly, and layer 0 holds every node. A search walks greedily down the layers and then does a best
+ * first search of layer 0, so it only looks at a small part of the vocabulary instead of all of it. This makes large
+ * target lists (tens of thousands of words) usable, at the cost of sometimes missing the true closest word.</p>
+ *
+ * <p>Tuning:</p>
+ * <ul>
+ *     <li>m - links per node (2m on layer 0). Higher gives better recall and a bigger, slower to build graph.</li>
+ *     <li>efConstruction - size of the candidate list while building. Higher gives a better graph.</li>
+ *     <li>efSearch - size of the candidate list while searching. Higher gives better recall, slower searches.</li>
+ * </ul>
+ */
+public class HnswIndex implements NearestNeighbourSearch {
+    private static final int MAGIC = 0x484E5357; // "HNSW"
+    private static final int VERSION = 1;
+
+    // Candidate found during a search
+    private record Candidate(int node, float similarity) {
+    }
+
+    private static final Comparator<Candidate> BEST_FIRST = (a, b) -> Float.compare(b.similarity, a.similarity);
+    private static final Comparator<Candidate> WORST_FIRST = (a, b) -> Float.compare(a.similarity, b.similarity);
+
+    private final VocabularyIndex index;
+    private final SimilarityKernel kernel;
+    private final int m;
+    private final int efConstruction;
+    private volatile int efSearch;
+
+    // Top layer of every node, and its links: links[node][layer] = {count, neighbour, neighbour, ...}
+    private final int[] levels;
+    private final int[][][] links;
+
+    // Where every search starts
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    // Set once building is finished, after that the links are read without locking
+    private volatile boolean frozen;
+
+    // Visited marks for searches, one array per thread
+    private final ThreadLocal<int[]> visited;
+    private final ThreadLocal<int[]> visitEpoch = ThreadLocal.withInitial(() -> new int[1]);
+
+    private HnswIndex(VocabularyIndex index, int m, int efConstruction, int efSearch, int[] levels, int[][][] links) {
+        this.index = index;
+        this.kernel = SimilarityKernel.select();
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        this.levels = levels;
+        this.links = links;
+        this.visited = ThreadLocal.withInitial(() -> new int[levels.length]);
+    }
+
+    // Empty link lists for every node on every layer it is part of
+    private static int[][][] emptyLinks(int[] levels, int m) {
+        int[][][] links = new int[levels.length][][];
+        for (int node = 0; node < levels.length; node++) {
+            links[node] = new int[levels[node] + 1][];
+            for (int layer = 0; layer <= levels[node]; layer++) {
+                links[node][layer] = new int[(layer == 0 ? 2 * m : m) + 1];
+            }
+        }
+        return links;
+    }
+
+    /**
+     * Builds the graph. Nodes are inserted in parallel, one worker per compute thread, each node locking only itself
+     * and the neighbours it links to.
+     *
+     * <p><b>Big-O Notation is O(n * log(n) * m)</b> -> n = Number of words and m = Length of each vector (with
+     * efConstruction and the number of links as constants).</p>
+     *
+     * @param index          The vocabulary to index.
+     * @param m              Links per node.
+     * @param efConstruction Candidate list size while building.
+     * @param efSearch       Candidate list size while searching.
+     * @return The graph.
+     * @throws IllegalArgumentException If a parameter is out of range.
+     */
+    public static HnswIndex build(VocabularyIndex index, int m, int efConstruction, int efSearch) {
+        if (m < 2 || efConstruction < 1 || efSearch < 1) {
+            throw new IllegalArgumentException("HNSW needs m >= 2 and ef >= 1");
+        }
+
+        // Layer of each node, exponentially rarer the higher it is (fixed seed, same layers every time)
+        Random random = new Random(42);
+        double levelMultiplier = 1 / Math.log(m);
+        int[] levels = new int[index.size()];
+        for (int node = 0; node < levels.length; node++) {
+            levels[node] = (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier);
+        }
+
+        HnswIndex graph = new HnswIndex(index, m, efConstruction, efSearch, levels, emptyLinks(levels, m));
+        if (levels.length == 0) {
+            graph.frozen = true;
+            return graph;
+        }
+
+        // The first node becomes the entry point, the rest are inserted by parallel workers
+        graph.insert(0);
+        AtomicInteger next = new AtomicInteger(1);
+        try {
+            ExecutionModel.forEach(ExecutionModel.parallelism(), worker -> {
+                int node;
+                while ((node = next.getAndIncrement()) < levels.length) {
+                    graph.insert(node);
+                }
+            });
+        } catch (RuntimeException e) {
+            throw new IllegalStateException("Failed to build HNSW index", e);
+        }
+
+        graph.frozen = true;
+        return graph;
+    }
+
+    /**
+     * Searches the graph for the closest word.
+     *
+     * <p><b>Big-O Notation is O(log(n) * m)</b> -> n = Number of words and m = Length of each vector, with efSearch
+     * as a constant.</p>
+     *
+     * @param query The normalized query vector.
+     * @return The best row found, or -1 if the index is empty.
+     */
+    @Override
+    public int nearest(float[] query) {
+        int node;
+        int top;
+        if (frozen) {
+            node = entryPoint;
+            top = maxLevel;
+        } else {
+            int[] entry = entry();
+            node = entry[0];
+            top = entry[1];
+        }
+        if (node < 0) {
+            return -1;
+        }
+
+        // Greedy walk down the sparse layers
+        for (int layer = top; layer > 0; layer--) {
+            node = greedy(query, node, layer);
+        }
+
+        // Best first search of the full layer
+        List<Candidate> found = searchLayer(query, node, Math.max(efSearch, 1), 0);
+        return found.get(0).node;
+    }
+
+    public void setEfSearch(int efSearch) {
+        if (efSearch < 1) {
+            throw new IllegalArgumentException("efSearch must be at least 1");
+        }
+        this.efSearch = efSearch;
+    }
+
+    public int efSearch() {
+        return efSearch;
+    }
+
+    private int maxLinks(int layer) {
+        return layer == 0 ? 2 * m : m;
+    }
+
+    private synchronized int[] entry() {
+        return new int[]{entryPoint, maxLevel};
+    }
+
+    /**
+     * Adds a node to the graph.
+     *
+     * @param node The row of the word to add.
+     */
+    private void insert(int node) {
+        int level = levels[node];
+        int[] entry;
+        synchronized (this) {
+            if (entryPoint < 0) {
+                entryPoint = node;
+                maxLevel = level;
+                return;
+            }
+            entry = new int[]{entryPoint, maxLevel};
+        }
+
+        float[] query = row(node);
+        int current = entry[0];
+
+        // Walk down to the node's own top layer
+        for (int layer = entry[1]; layer > level; layer--) {
+            current = greedy(query, current, layer);
+        }
+
+        // Link the node on every layer it is part of
+        for (int layer = Math.min(level, entry[1]); layer >= 0; layer--) {
+            List<Candidate> candidates = searchLayer(query, current, efConstruction, layer);
+            candidates.removeIf(candidate -> candidate.node == node);
+            if (candidates.isEmpty()) {
+                continue;
+            }
+            List<Candidate> neighbours = selectNeighbours(candidates, maxLinks(layer));
+
+            int[] own = links[node][layer];
+            synchronized (links[node]) {
+                own[0] = neighbours.size();
+                for (int i = 0; i < neighbours.size(); i++) {
+                    own[i + 1] = neighbours.get(i).node;
+                }
+            }
+            for (Candidate neighbour : neighbours) {
+                addLink(neighbour.node, node, neighbour.similarity, layer);
+            }
+            current = candidates.get(0).node;
+        }
+
+        // A node higher than any before becomes the new entry point
+        synchronized (this) {
+            if (level > maxLevel) {
+                maxLevel = level;
+                entryPoint = node;
+            }
+        }
+    }
+
+    /**
+     * Adds a link from one node to another, pruning the node's links if it has too many.
+     *
+     * @param from       The node getting the link.
+     * @param to         The node being linked to.
+     * @param similarity The similarity between the two nodes.
+     * @param layer      The layer of the link.
+     */
+    private void addLink(int from, int to, float similarity, int layer) {
+        synchronized (links[from]) {
+            int[] own = links[from][layer];
+            int count = own[0];
+            if (count < own.length - 1) {
+                own[++count] = to;
+                own[0] = count;
+                return;
+            }
+
+            // Full, keep the best set out of the old links and the new one
+            float[] base = row(from);
+            List<Candidate> candidates = new ArrayList<>(count + 1);
+            candidates.add(new Candidate(to, similarity));
+            for (int i = 1; i <= count; i++) {
+                candidates.add(new Candidate(own[i], dot(base, own[i])));
+            }
+            candidates.sort(BEST_FIRST);
+
+            List<Candidate> kept = selectNeighbours(candidates, own.length - 1);
+            own[0] = kept.size();
+            for (int i = 0; i < kept.size(); i++) {
+                own[i + 1] = kept.get(i).node;
+            }
+        }
+    }
+
+    /**
+     * Picks neighbours with the HNSW heuristic: a candidate is kept only if it is closer to the base node than to
+     * any neighbour already kept. This spreads the links in different directions. Free places are then filled with
+     * the closest skipped candidates.
+     *
+     * @param candidates The candidates, best first.
+     * @param max        The number of neighbours wanted.
+     * @return The neighbours, best first.
+     */
+    private List<Candidate> selectNeighbours(List<Candidate> candidates, int max) {
+        List<Candidate> kept = new ArrayList<>(max);
+        List<Candidate> skipped = new ArrayList<>();
+        for (Candidate candidate : candidates) {
+            if (kept.size() >= max) {
+                break;
+            }
+
+            float[] candidateRow = row(candidate.node);
+            boolean diverse = true;
+            for (Candidate other : kept) {
+                if (dot(candidateRow, other.node) > candidate.similarity) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                kept.add(candidate);
+            } else {
+                skipped.add(candidate);
+            }
+        }
+        for (int i = 0; i < skipped.size() && kept.size() < max; i++) {
+            kept.add(skipped.get(i));
+        }
+        return kept;
+    }
+
+    /**
+     * Moves to the best neighbour until no neighbour is better (ef = 1).
+     *
+     * @param query The normalized query vector.
+     * @param start The node to start from.
+     * @param layer The layer to search.
+     * @return The best node found.
+     */
+    private int greedy(float[] query, int start, int layer) {
+        int current = start;
+        float best = dot(query, current);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            int[] neighbours = neighbours(current, layer);
+            for (int i = 1; i <= neighbours[0]; i++) {
+                float similarity = dot(query, neighbours[i]);
+                if (similarity > best) {
+                    best = similarity;
+                    current = neighbours[i];
+                    changed = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Best first search of one layer.
+     *
+     * @param query The normalized query vector.
+     * @param start The node to start from.
+     * @param ef    The number of results to keep.
+     * @param layer The layer to search.
+     * @return Up to ef nodes, best first (never empty).
+     */
+    private List<Candidate> searchLayer(float[] query, int start, int ef, int layer) {
+        int[] marks = visited.get();
+        int[] epochHolder = visitEpoch.get();
+        int epoch = ++epochHolder[0];
+        if (epoch == 0) {
+            // Counter wrapped around, start again with clean marks
+            Arrays.fill(marks, 0);
+            epoch = epochHolder[0] = 1;
+        }
+
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>(BEST_FIRST);
+        PriorityQueue<Candidate> results = new PriorityQueue<>(WORST_FIRST);
+        Candidate first = new Candidate(start, dot(query, start));
+        candidates.add(first);
+        results.add(first);
+        marks[start] = epoch;
+
+        while (!candidates.isEmpty()) {
+            Candidate current = candidates.poll();
+            if (results.size() >= ef && current.similarity < results.peek().similarity) {
+                // Nothing left that can improve the results
+                break;
+            }
+
+            int[] neighbours = neighbours(current.node, layer);
+            for (int i = 1; i <= neighbours[0]; i++) {
+                int neighbour = neighbours[i];
+                if (marks[neighbour] == epoch) {
+                    continue;
+                }
+                marks[neighbour] = epoch;
+
+                float similarity = dot(query, neighbour);
+                if (results.size() < ef || similarity > results.peek().similarity) {
+                    Candidate candidate = new Candidate(neighbour, similarity);
+                    candidates.add(candidate);
+                    results.add(candidate);
+                    if (results.size() > ef) {
+                        results.poll();
+                    }
+                }
+            }
+        }
+
+        List<Candidate> found = new ArrayList<>(results);
+        found.sort(BEST_FIRST);
+        return found;
+    }
+
+    // Links of a node on a layer, {count, neighbour, ...}. Copied under the lock while the graph is being built.
+    private int[] neighbours(int node, int layer) {
+        if (frozen) {
+            return links[node][layer];
+        }
+        synchronized (links[node]) {
+            return links[node][layer].clone();
+        }
+    }
+
+    private float dot(float[] query, int node) {
+        Metrics.SIMILARITY_EVALUATIONS.increment();
+        return kernel.dot(query, index.matrix, node * index.dimensions);
+    }
+
+    private float[] row(int node) {
+        float[] row = new float[index.dimensions];
+        System.arraycopy(index.matrix, node * index.dimensions, row, 0, index.dimensions);
+        return row;
+    }
+
+    /**
+     * Compares this graph against the exact search on a set of queries.
+     *
+     * @param exact   The exact search.
+     * @param queries Normalized query vectors.
+     * @return A one line report with the recall (share of queries where both agree) and the time per query.
+     */
+    public String recallReport(NearestNeighbourSearch exact, List<float[]> queries) {
+        int[] expected = new int[queries.size()];
+        long start = System.nanoTime();
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = exact.nearest(queries.get(i));
+        }
+        long exactTime = System.nanoTime() - start;
+
+        int agree = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < expected.length; i++) {
+            if (nearest(queries.get(i)) == expected[i]) {
+                agree++;
+            }
+        }
+        long approximateTime = System.nanoTime() - start;
+
+        int count = Math.max(1, queries.size());
+        return String.format("efSearch=%d recall@1=%.4f exact=%.1fus/query hnsw=%.1fus/query speedup=%.1fx",
+                efSearch, (double) agree / count, exactTime / 1000.0 / count, approximateTime / 1000.0 / count,
+                (double) exactTime / Math.max(1, approximateTime));
+    }
+
+    /**
+     * Saves the graph so it doesn't need to be built again. The file is tied to the index with
+     * {@link VocabularyIndex#fingerprint()}.
+     *
+     * @param fileName The path for the graph file.
+     * @throws IOException If the file can't be written.
+     */
+    public void save(String fileName) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(index.fingerprint());
+            out.writeInt(levels.length);
+            out.writeInt(m);
+            out.writeInt(efConstruction);
+            out.writeInt(efSearch);
+            out.writeInt(entryPoint);
+            out.writeInt(maxLevel);
+            for (int node = 0; node < levels.length; node++) {
+                out.writeByte(levels[node]);
+                for (int layer = 0; layer <= levels[node]; layer++) {
+                    int[] own = links[node][layer];
+                    out.writeShort(own[0]);
+                    for (int i = 1; i <= own[0]; i++) {
+                        out.writeInt(own[i]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads a saved graph if it exists and was built for the same index.
+     *
+     * @param fileName The path to the graph file.
+     * @param index    The vocabulary the graph should belong to.
+     * @return The graph, or null if there is no file or it belongs to a different index.
+     * @throws IOException If the file exists but can't be read.
+     */
+    public static HnswIndex load(String fileName, VocabularyIndex index) throws IOException {
+        File file = new File(fileName);
+        if (!file.isFile()) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not an HNSW index: " + fileName);
+            }
+            if (in.readLong() != index.fingerprint() || in.readInt() != index.size()) {
+                return null;
+            }
+
+            int m = in.readInt();
+            int efConstruction = in.readInt();
+            int efSearch = in.readInt();
+            int entryPoint = in.readInt();
+            int maxLevel = in.readInt();
+
+            int[] levels = new int[index.size()];
+            int[][][] links = new int[levels.length][][];
+            for (int node = 0; node < levels.length; node++) {
+                levels[node] = in.readUnsignedByte();
+                links[node] = new int[levels[node] + 1][];
+                for (int layer = 0; layer <= levels[node]; layer++) {
+                    int count = in.readUnsignedShort();
+                    int[] own = new int[(layer == 0 ? 2 * m : m) + 1];
+                    if (count > own.length - 1) {
+                        throw new IOException("Corrupt HNSW index: " + fileName);
+                    }
+                    own[0] = count;
+                    for (int i = 1; i <= count; i++) {
+                        own[i] = in.readInt();
+                    }
+                    links[node][layer] = own;
+                }
+            }
+
+            HnswIndex graph = new HnswIndex(index, m, efConstruction, efSearch, levels, links);
+            graph.entryPoint = entryPoint;
+            graph.maxLevel = maxLevel;
+            graph.frozen = true;
+            return graph;
+        }
+    }
+}
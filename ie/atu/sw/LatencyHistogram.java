@@ -0,0 +1,99 @@
+package ie.atu.sw;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread-safe latency histogram with power-of-two buckets in microseconds (bucket i holds times from 2^i up to
+ * 2^(i+1) microseconds). Recording is lock-free, so it can be shared by every request thread.
+ */
+public class LatencyHistogram {
+    private static final int BUCKETS = 40;
+
+    private final LongAdder[] counts = new LongAdder[BUCKETS];
+    private final LongAdder total = new LongAdder();
+    private final LongAdder totalMicros = new LongAdder();
+    private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+
+    // Constructor
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records one measurement.
+     *
+     * @param nanos The time taken in nanoseconds.
+     */
+    public void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        int bucket = Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(Math.max(1, micros)));
+        counts[bucket].increment();
+        total.increment();
+        totalMicros.add(micros);
+        maxMicros.accumulate(micros);
+    }
+
+    public long count() {
+        return total.sum();
+    }
+
+    public long meanMicros() {
+        long recorded = total.sum();
+        return recorded == 0 ? 0 : totalMicros.sum() / recorded;
+    }
+
+    public long maxMicros() {
+        return maxMicros.get();
+    }
+
+    /**
+     * Estimates a percentile from the buckets. The answer is the upper edge of the bucket the percentile falls in,
+     * so it is at most twice the real value.
+     *
+     * @param percentile The percentile, from 0 to 100.
+     * @return The latency in microseconds, or 0 if nothing was recorded.
+     */
+    public long percentileMicros(double percentile) {
+        long recorded = total.sum();
+        if (recorded == 0) {
+            return 0;
+        }
+
+        long target = (long) Math.ceil(recorded * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i].sum();
+            if (seen >= Math.max(1, target)) {
+                return Math.min(1L << (i + 1), maxMicros.get());
+            }
+        }
+        return maxMicros.get();
+    }
+
+    // Summary as a single JSON object
+    public String toJson() {
+        long recorded = total.sum();
+        StringBuilder json = new StringBuilder();
+        json.append("{\"count\":").append(recorded)
+                .append(",\"meanMicros\":").append(meanMicros())
+                .append(",\"p50Micros\":").append(percentileMicros(50))
+                .append(",\"p90Micros\":").append(percentileMicros(90))
+                .append(",\"p99Micros\":").append(percentileMicros(99))
+                .append(",\"maxMicros\":").append(maxMicros.get())
+                .append(",\"buckets\":{");
+
+        // Only the buckets in use, keyed by their upper edge
+        boolean first = true;
+        for (int i = 0; i < BUCKETS; i++) {
+            long count = counts[i].sum();
+            if (count > 0) {
+                json.append(first ? "" : ",").append("\"<").append(1L << (i + 1)).append("us\":").append(count);
+                first = false;
+            }
+        }
+        return json.append("}}").toString();
+    }
+}
@@ -0,0 +1,347 @@
+package ie.atu.sw;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Word embeddings that stay in the text file until they are needed.
+ *
+ * <p>Opening the store only builds an index of where each word's line starts. A vector is parsed the first time it
+ * is asked for and then kept, so a small document only ever parses the Google-1000 words and its own words instead
+ * of the whole file. The index is saved next to the embeddings file (embeddings.txt.idx) and reused while the
+ * embeddings file has the same size and modification time.</p>
+ *
+ * <p>Selected with -Dsimplifier.storage=lazy. Best for one-off runs on small inputs; for many documents the eager
+ * stores are faster as every vector is parsed once up front in parallel.</p>
+ */
+public class LazyEmbeddingStore implements EmbeddingStore {
+    private static final int MAGIC = 0x58444957; // "WIDX" read as a little-endian int
+    private static final int VERSION = 1;
+
+    // Bytes read at a time while building the index
+    private static final int BLOCK_SIZE = 1 << 20;
+
+    // Metrics
+    private static final Metrics.Counter VECTORS_PARSED = Metrics.counter("load.lazyVectorsParsed");
+
+    private final Path file;
+    private final WordTable table;
+    private final long[] offsets;
+    private final int[] lengths;
+    private final int dimensions;
+
+    // Vectors parsed so far, by row
+    private final AtomicReferenceArray<double[]> vectors;
+
+    // The channel is closed if a reading thread is interrupted, so it can be opened again
+    private final ReentrantLock reopening = new ReentrantLock();
+    private volatile FileChannel channel;
+
+    private LazyEmbeddingStore(Path file, WordTable table, long[] offsets, int[] lengths, int dimensions)
+            throws IOException {
+        this.file = file;
+        this.table = table;
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.dimensions = dimensions;
+        this.vectors = new AtomicReferenceArray<>(offsets.length);
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+    }
+
+    /**
+     * Opens a text embeddings file, reading the saved index or building (and saving) a new one.
+     *
+     * <p><b>Big-O Notation is O(n)</b> -> n = Size of the file in bytes, to build the index. With a saved index
+     * it is O(w * l) -> w = Number of words and l = Average length of a word, and no vector is parsed.</p>
+     *
+     * @param fileName The path to the text embeddings file.
+     * @return The store.
+     * @throws IOException If the file can't be read.
+     */
+    public static LazyEmbeddingStore open(String fileName) throws IOException {
+        File source = new File(fileName);
+        String indexFile = fileName + ".idx";
+        LazyEmbeddingStore store = readIndex(source, indexFile);
+        if (store != null) {
+            return store;
+        }
+
+        store = buildIndex(source);
+        try {
+            store.writeIndex(source, indexFile);
+        } catch (IOException e) {
+            System.out.println("Embeddings index not saved: " + e.getMessage());
+        }
+        return store;
+    }
+
+    /**
+     * Parses the vector of a word the first time it is asked for.
+     *
+     * <p><b>Big-O Notation is O(m)</b> -> m = Length of the vector, for a parse or a copy of a parsed vector.</p>
+     *
+     * @param word The word, already trimmed and in lowercase.
+     * @return A copy of the vector, or null if the word is not in the file.
+     * @throws java.io.UncheckedIOException If the line can't be read or parsed.
+     */
+    @Override
+    public double[] get(String word) {
+        int row = table.row(word);
+        return row < 0 ? null : vector(row).clone();
+    }
+
+    @Override
+    public boolean contains(String word) {
+        return table.row(word) >= 0;
+    }
+
+    @Override
+    public int row(CharSequence word) {
+        return table.row(word);
+    }
+
+    @Override
+    public String word(int row) {
+        return table.word(row);
+    }
+
+    @Override
+    public int size() {
+        return table.size();
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+
+    @Override
+    public String[] words() {
+        String[] words = new String[table.size()];
+        for (int row = 0; row < words.length; row++) {
+            words[row] = table.word(row);
+        }
+        return words;
+    }
+
+    // Number of vectors parsed so far
+    public int parsed() {
+        int count = 0;
+        for (int row = 0; row < vectors.length(); row++) {
+            if (vectors.get(row) != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // The parsed vector of a row, parsing it if needed. Two threads may parse the same row, the first one wins.
+    private double[] vector(int row) {
+        double[] vector = vectors.get(row);
+        if (vector != null) {
+            return vector;
+        }
+
+        try {
+            byte[] line = readLine(offsets[row], lengths[row]);
+            int end = line.length > 0 && line[line.length - 1] == '\r' ? line.length - 1 : line.length;
+            int wordEnd = TextEmbeddingsParser.wordEnd(line, 0, end);
+            vector = TextEmbeddingsParser.parseVector(line, wordEnd + 1, end, new double[Math.max(1, dimensions)]);
+        } catch (IOException e) {
+            throw new java.io.UncheckedIOException(e);
+        }
+        VECTORS_PARSED.increment();
+        return vectors.compareAndSet(row, null, vector) ? vector : vectors.get(row);
+    }
+
+    private byte[] readLine(long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (true) {
+            FileChannel current = channel;
+            try {
+                while (buffer.hasRemaining()) {
+                    if (current.read(buffer, offset + buffer.position()) < 0) {
+                        throw new IOException("Embeddings file is shorter than its index: " + file);
+                    }
+                }
+                return buffer.array();
+            } catch (ClosedChannelException e) {
+                // Closed by an interrupted reader, open it again and retry from the start of the line
+                reopen(current);
+                buffer.clear();
+            }
+        }
+    }
+
+    private void reopen(FileChannel closed) throws IOException {
+        reopening.lock();
+        try {
+            if (channel == closed) {
+                channel = FileChannel.open(file, StandardOpenOption.READ);
+            }
+        } finally {
+            reopening.unlock();
+        }
+    }
+
+    /**
+     * Scans the file once, noting where every line starts and how long it is. Only the words are decoded.
+     *
+     * @param source The text embeddings file.
+     * @return The store.
+     * @throws IOException If the file can't be read.
+     */
+    private static LazyEmbeddingStore buildIndex(File source) throws IOException {
+        List<String> words = new ArrayList<>();
+        long[] offsets = new long[1024];
+        int[] lengths = new int[1024];
+        Map<String, Integer> rows = new HashMap<>();
+        int dimensions = -1;
+
+        try (FileChannel channel = FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
+            byte[] block = new byte[BLOCK_SIZE];
+            int filled = 0;
+            long blockStart = 0;
+            long position = 0;
+            long size = channel.size();
+
+            while (position < size || filled > 0) {
+                if (filled == block.length) {
+                    // A single line is longer than the block
+                    block = Arrays.copyOf(block, block.length * 2);
+                }
+                int read = position < size ? channel.read(ByteBuffer.wrap(block, filled, block.length - filled),
+                        position) : -1;
+                if (read > 0) {
+                    position += read;
+                    filled += read;
+                }
+                boolean last = position >= size;
+
+                // Index every complete line, or everything if the file is finished
+                int lineStart = 0;
+                for (int i = 0; i <= filled; i++) {
+                    if (i == filled ? !last || lineStart == filled : block[i] != '\n') {
+                        continue;
+                    }
+
+                    int end = i > lineStart && block[i - 1] == '\r' ? i - 1 : i;
+                    if (end > lineStart) {
+                        int wordEnd = TextEmbeddingsParser.wordEnd(block, lineStart, end);
+                        String word = new String(block, lineStart, wordEnd - lineStart, StandardCharsets.UTF_8)
+                                .trim().toLowerCase();
+                        if (dimensions < 0) {
+                            dimensions = TextEmbeddingsParser.parseVector(block, wordEnd + 1, end,
+                                    new double[512]).length;
+                        }
+
+                        // As with the eager parser, the line closest to the end of the file wins
+                        Integer row = rows.putIfAbsent(word, words.size());
+                        int target = row == null ? words.size() : row;
+                        if (row == null) {
+                            words.add(word);
+                            if (target == offsets.length) {
+                                offsets = Arrays.copyOf(offsets, target * 2);
+                                lengths = Arrays.copyOf(lengths, target * 2);
+                            }
+                        }
+                        offsets[target] = blockStart + lineStart;
+                        lengths[target] = i - lineStart;
+                    }
+                    lineStart = i + 1;
+                }
+
+                // Move the partial line to the front of the block
+                lineStart = Math.min(lineStart, filled);
+                System.arraycopy(block, lineStart, block, 0, filled - lineStart);
+                filled -= lineStart;
+                blockStart += lineStart;
+                if (last) {
+                    break;
+                }
+            }
+            Metrics.BYTES_PARSED.add(size);
+            Metrics.LINES_PARSED.add(words.size());
+        }
+
+        int count = words.size();
+        return new LazyEmbeddingStore(source.toPath(), WordTable.of(words.toArray(new String[0])),
+                Arrays.copyOf(offsets, count), Arrays.copyOf(lengths, count), Math.max(0, dimensions));
+    }
+
+    /**
+     * Reads a saved index, if it was made for the same version of the embeddings file.
+     *
+     * @param source    The text embeddings file.
+     * @param indexFile The saved index.
+     * @return The store, or null if there is no valid index.
+     * @throws IOException If the embeddings file can't be opened.
+     */
+    private static LazyEmbeddingStore readIndex(File source, String indexFile) throws IOException {
+        if (!new File(indexFile).isFile()) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != source.length()
+                    || in.readLong() != source.lastModified()) {
+                return null;
+            }
+
+            int dimensions = in.readInt();
+            int count = in.readInt();
+            String[] words = new String[count];
+            long[] offsets = new long[count];
+            int[] lengths = new int[count];
+            for (int row = 0; row < count; row++) {
+                words[row] = in.readUTF();
+                offsets[row] = in.readLong();
+                lengths[row] = in.readInt();
+            }
+            return new LazyEmbeddingStore(source.toPath(), WordTable.of(words), offsets, lengths, dimensions);
+        } catch (IOException | IllegalArgumentException e) {
+            // A damaged index is built again
+            System.out.println("Embeddings index not used: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeIndex(File source, String indexFile) throws IOException {
+        File part = new File(indexFile + ".part");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(part)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(source.length());
+            out.writeLong(source.lastModified());
+            out.writeInt(dimensions);
+            out.writeInt(table.size());
+            for (int row = 0; row < table.size(); row++) {
+                out.writeUTF(table.word(row));
+                out.writeLong(offsets[row]);
+                out.writeInt(lengths[row]);
+            }
+        }
+        if (!part.renameTo(new File(indexFile))) {
+            throw new IOException("Can't rename " + part);
+        }
+    }
+}
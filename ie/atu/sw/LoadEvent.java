@@ -0,0 +1,30 @@
+package ie.atu.sw;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event covering one loading phase (the embeddings or the Google-1000 list).
+ */
+@Name("ie.atu.sw.Load")
+@Label("Load")
+@Category("Text Simplifier")
+@Description("Loading the embeddings or the Google-1000 list")
+class LoadEvent extends Event {
+    @Label("Phase")
+    String phase;
+
+    @Label("File")
+    String file;
+
+    @Label("Words")
+    long words;
+
+    @Label("Size")
+    @DataAmount
+    long bytes;
+}
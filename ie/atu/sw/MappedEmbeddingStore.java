@@ -0,0 +1,364 @@
+package ie.atu.sw;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Embeddings stored in a binary file that is memory-mapped instead of parsed.
+ *
+ * <p>Opening the file only maps it into memory, so startup is close to instant and the vectors stay off the heap
+ * (the operating system pages them in as they are used). A word is found through a hash table that is also stored
+ * in the file, so nothing needs to be built when the file is opened.</p>
+ *
+ * <p>File layout (little-endian):</p>
+ * <pre>
+ *   header   magic "WEMB", version, word count, dimensions, hash slots, then the offsets of each section
+ *   strings  int[count + 1] byte offsets, then the UTF-8 bytes of every word
+ *   hash     int[slots], open addressing with linear probing, holds row + 1 (0 = empty)
+ *   vectors  float32[count * dimensions], row-major, 64-byte aligned
+ * </pre>
+ */
+public class MappedEmbeddingStore implements EmbeddingStore {
+    static final int MAGIC = 0x424D4557; // "WEMB" read as a little-endian int
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int ALIGNMENT = 64;
+
+    private final int count;
+    private final int dimensions;
+    private final int hashMask;
+
+    // Words and hash table
+    private final ByteBuffer meta;
+    private final int stringOffsets;
+    private final int stringData;
+    private final int hashTable;
+
+    // Vectors, split into several mappings if the block is larger than 2GB
+    private final ByteBuffer[] vectorSegments;
+    private final int rowsPerSegment;
+
+    private MappedEmbeddingStore(int count, int dimensions, int hashSlots, ByteBuffer meta, int stringOffsets,
+                                 int stringData, int hashTable, ByteBuffer[] vectorSegments, int rowsPerSegment) {
+        this.count = count;
+        this.dimensions = dimensions;
+        this.hashMask = hashSlots - 1;
+        this.meta = meta;
+        this.stringOffsets = stringOffsets;
+        this.stringData = stringData;
+        this.hashTable = hashTable;
+        this.vectorSegments = vectorSegments;
+        this.rowsPerSegment = rowsPerSegment;
+    }
+
+    /**
+     * Checks the first bytes of a file for the binary embeddings magic number.
+     *
+     * @param fileName The path to the embeddings file.
+     * @return True if the file is in the binary format.
+     * @throws IOException If the file can't be read.
+     */
+    public static boolean isBinary(String fileName) throws IOException {
+        try (InputStream in = new FileInputStream(fileName)) {
+            byte[] start = in.readNBytes(4);
+            return start.length == 4
+                    && ByteBuffer.wrap(start).order(ByteOrder.LITTLE_ENDIAN).getInt() == MAGIC;
+        }
+    }
+
+    /**
+     * Maps a binary embeddings file into memory.
+     *
+     * <p><b>Big-O Notation is O(1)</b> -> nothing is read up front apart from the header.</p>
+     *
+     * @param fileName The path to the binary embeddings file.
+     * @return The store.
+     * @throws IOException If the file can't be mapped or is not in the binary format.
+     */
+    public static MappedEmbeddingStore open(String fileName) throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(fileName), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(header, 0);
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Not a binary embeddings file: " + fileName);
+            }
+
+            int count = header.getInt();
+            int dimensions = header.getInt();
+            int hashSlots = header.getInt();
+            header.getInt();
+            long stringOffsets = header.getLong();
+            long stringData = header.getLong();
+            long hashTable = header.getLong();
+            long vectors = header.getLong();
+            if (vectors > Integer.MAX_VALUE) {
+                throw new IOException("Word list is too large to map: " + fileName);
+            }
+
+            // The header, words and hash table are mapped together
+            MappedByteBuffer meta = channel.map(FileChannel.MapMode.READ_ONLY, 0, vectors);
+            meta.order(ByteOrder.LITTLE_ENDIAN);
+
+            // The vectors are mapped in segments of whole rows, each smaller than 2GB
+            int rowBytes = Math.max(1, dimensions * Float.BYTES);
+            int rowsPerSegment = Math.max(1, Integer.MAX_VALUE / rowBytes);
+            int segments = Math.max(1, (count + rowsPerSegment - 1) / rowsPerSegment);
+            ByteBuffer[] vectorSegments = new ByteBuffer[segments];
+            for (int i = 0; i < segments; i++) {
+                long firstRow = (long) i * rowsPerSegment;
+                long rows = Math.min(rowsPerSegment, count - firstRow);
+                vectorSegments[i] = channel.map(FileChannel.MapMode.READ_ONLY, vectors + firstRow * rowBytes,
+                        Math.max(0, rows) * rowBytes).order(ByteOrder.LITTLE_ENDIAN);
+            }
+
+            // The mappings stay valid after the channel is closed
+            return new MappedEmbeddingStore(count, dimensions, hashSlots, meta, (int) stringOffsets,
+                    (int) stringData, (int) hashTable, vectorSegments, rowsPerSegment);
+        }
+    }
+
+    /**
+     * Gets the vector for a word by probing the hash table stored in the file.
+     *
+     * <p><b>Big-O Notation is O(m)</b> -> m = Length of the vector, the lookup itself is O(1) on average.</p>
+     *
+     * @param word The word, already trimmed and in lowercase.
+     * @return A copy of the vector, or null if the word is not in the file.
+     */
+    @Override
+    public double[] get(String word) {
+        int row = row(word);
+        if (row < 0) {
+            return null;
+        }
+
+        double[] vector = new double[dimensions];
+        ByteBuffer segment = vectorSegments[row / rowsPerSegment];
+        int offset = (row % rowsPerSegment) * dimensions * Float.BYTES;
+        for (int i = 0; i < dimensions; i++) {
+            vector[i] = segment.getFloat(offset + i * Float.BYTES);
+        }
+        return vector;
+    }
+
+    @Override
+    public boolean contains(String word) {
+        return row(word) >= 0;
+    }
+
+    /**
+     * Finds the row of a word in the file. The word is encoded to UTF-8 first, so unlike the heap stores this makes
+     * a copy of it.
+     *
+     * @param word The word to look up.
+     * @return The row, or -1 if the word is not in the file.
+     */
+    @Override
+    public int row(CharSequence word) {
+        byte[] bytes = word.toString().getBytes(StandardCharsets.UTF_8);
+        int slot = hash(bytes, 0, bytes.length) & hashMask;
+
+        // Linear probing until an empty slot is found
+        while (true) {
+            int entry = meta.getInt(hashTable + slot * Integer.BYTES);
+            if (entry == 0) {
+                return -1;
+            }
+            if (wordEquals(entry - 1, bytes)) {
+                return entry - 1;
+            }
+            slot = (slot + 1) & hashMask;
+        }
+    }
+
+    private boolean wordEquals(int row, byte[] bytes) {
+        int start = meta.getInt(stringOffsets + row * Integer.BYTES);
+        int end = meta.getInt(stringOffsets + (row + 1) * Integer.BYTES);
+        if (end - start != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (meta.get(stringData + start + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Word stored in the given row
+    @Override
+    public String word(int row) {
+        int start = meta.getInt(stringOffsets + row * Integer.BYTES);
+        int end = meta.getInt(stringOffsets + (row + 1) * Integer.BYTES);
+        byte[] bytes = new byte[end - start];
+        meta.get(stringData + start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+
+    @Override
+    public String[] words() {
+        String[] words = new String[count];
+        for (int row = 0; row < count; row++) {
+            words[row] = word(row);
+        }
+        return words;
+    }
+
+    // FNV-1a hash of UTF-8 bytes, used both when writing and when reading the table
+    static int hash(byte[] bytes, int from, int to) {
+        int hash = 0x811C9DC5;
+        for (int i = from; i < to; i++) {
+            hash ^= bytes[i] & 0xFF;
+            hash *= 0x01000193;
+        }
+        return hash;
+    }
+
+    /**
+     * Converts a text embeddings file ("word, 0.1, 0.2, ...") into the binary format.
+     *
+     * <p>The text file is read once. Vectors are written straight to a temporary file, so only the words are kept
+     * on the heap. If a word appears more than once, the last vector wins, the same as the text loader.</p>
+     *
+     * <p><b>Big-O Notation is O(n * m)</b> -> n = Number of lines and m = Length of each vector.</p>
+     *
+     * @param textFile   The path to the text embeddings file.
+     * @param binaryFile The path for the binary file.
+     * @throws IOException If a file can't be read or written, or the vectors are of different lengths.
+     */
+    public static void convert(String textFile, String binaryFile) throws IOException {
+        List<String> words = new ArrayList<>();
+        Map<String, Integer> rows = new HashMap<>();
+        int dimensions = -1;
+
+        Path vectorFile = Files.createTempFile(Path.of(binaryFile).toAbsolutePath().getParent(), "vectors", ".tmp");
+        try (BufferedReader reader = new BufferedReader(new FileReader(textFile));
+             FileChannel vectors = FileChannel.open(vectorFile, StandardOpenOption.READ,
+                     StandardOpenOption.WRITE)) {
+
+            ByteBuffer rowBuffer = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // Same parsing rules as the text loader
+                String[] parts = line.split(", ");
+                String word = parts[0].trim().toLowerCase();
+                if (dimensions < 0) {
+                    dimensions = parts.length - 1;
+                    rowBuffer = ByteBuffer.allocate(dimensions * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                } else if (parts.length - 1 != dimensions) {
+                    throw new IOException("Vectors must have the same length (word " + word + ")");
+                }
+
+                rowBuffer.clear();
+                for (int i = 1; i < parts.length; i++) {
+                    rowBuffer.putFloat((float) Double.parseDouble(parts[i]));
+                }
+                rowBuffer.flip();
+
+                // Duplicate words overwrite their earlier row
+                Integer row = rows.get(word);
+                if (row == null) {
+                    row = words.size();
+                    rows.put(word, row);
+                    words.add(word);
+                }
+                vectors.write(rowBuffer, (long) row * dimensions * Float.BYTES);
+            }
+
+            write(binaryFile, words, Math.max(0, dimensions), vectors);
+        } finally {
+            Files.deleteIfExists(vectorFile);
+        }
+        System.out.println("Converted " + words.size() + " words to " + binaryFile);
+    }
+
+    private static void write(String binaryFile, List<String> words, int dimensions, FileChannel vectors) throws IOException {
+        int count = words.size();
+
+        // String table
+        byte[][] encoded = new byte[count][];
+        int[] offsets = new int[count + 1];
+        for (int row = 0; row < count; row++) {
+            encoded[row] = words.get(row).getBytes(StandardCharsets.UTF_8);
+            offsets[row + 1] = offsets[row] + encoded[row].length;
+        }
+
+        // Hash table, at most half full so probe chains stay short
+        int slots = Integer.highestOneBit(Math.max(2, count * 2 - 1)) << 1;
+        int[] table = new int[slots];
+        for (int row = 0; row < count; row++) {
+            int slot = hash(encoded[row], 0, encoded[row].length) & (slots - 1);
+            while (table[slot] != 0) {
+                slot = (slot + 1) & (slots - 1);
+            }
+            table[slot] = row + 1;
+        }
+
+        long stringOffsets = HEADER_SIZE;
+        long stringData = stringOffsets + (long) (count + 1) * Integer.BYTES;
+        long hashTable = align(stringData + offsets[count], Integer.BYTES);
+        long vectorStart = align(hashTable + (long) slots * Integer.BYTES, ALIGNMENT);
+
+        try (FileChannel out = FileChannel.open(Path.of(binaryFile), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(dimensions).putInt(slots).putInt(0);
+            header.putLong(stringOffsets).putLong(stringData).putLong(hashTable).putLong(vectorStart);
+            header.position(HEADER_SIZE).flip();
+            writeFully(out, header, 0);
+
+            ByteBuffer offsetBuffer = ByteBuffer.allocate((count + 1) * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            offsetBuffer.asIntBuffer().put(offsets);
+            writeFully(out, offsetBuffer, stringOffsets);
+
+            long position = stringData;
+            for (byte[] bytes : encoded) {
+                writeFully(out, ByteBuffer.wrap(bytes), position);
+                position += bytes.length;
+            }
+
+            ByteBuffer tableBuffer = ByteBuffer.allocate(slots * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            tableBuffer.asIntBuffer().put(table);
+            writeFully(out, tableBuffer, hashTable);
+
+            // Copy the vector block from the temporary file
+            long size = (long) count * dimensions * Float.BYTES;
+            long copied = 0;
+            while (copied < size) {
+                copied += vectors.transferTo(copied, size - copied, out.position(vectorStart + copied));
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static long align(long position, int alignment) {
+        return (position + alignment - 1) / alignment * alignment;
+    }
+}
@@ -0,0 +1,219 @@
+package ie.atu.sw;
+
+import javax.management.*;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Counters and timers for every stage of loading and simplifying, shared by the whole process.
+ *
+ * <p>Counters are {@link LongAdder}s and timers are {@link LatencyHistogram}s, so recording from many threads is
+ * cheap and lock-free. Gauges read a current value, such as the target vocabulary version, when asked. The values can be read in three ways:</p>
+ * <ul>
+ *     <li>JMX: every value is an attribute of the MBean ie.atu.sw:type=Metrics (JConsole, VisualVM, ...).</li>
+ *     <li>A JSON line per interval appended to a file, see {@link #startDump(Path, long)}.</li>
+ *     <li>{@link #snapshot()} and {@link #toJson()} from code.</li>
+ * </ul>
+ *
+ * <p>The load and simplify phases are also recorded as JFR events ({@link LoadEvent} and {@link SimplifyEvent}) so
+ * they can be lined up with GC and CPU activity in a flight recording.</p>
+ */
+public final class Metrics {
+    private static final Map<String, Counter> COUNTERS = new ConcurrentSkipListMap<>();
+    private static final Map<String, LatencyHistogram> TIMERS = new ConcurrentSkipListMap<>();
+    private static final Map<String, LongSupplier> GAUGES = new ConcurrentSkipListMap<>();
+
+    // Loading
+    public static final Counter BYTES_PARSED = counter("load.bytesParsed");
+    public static final Counter LINES_PARSED = counter("load.linesParsed");
+    public static final Counter WORDS_LOADED = counter("load.wordsLoaded");
+    public static final Counter GOOGLE_MISSES = counter("load.google1000Misses");
+    public static final LatencyHistogram EMBEDDINGS_LOAD = timer("load.embeddings");
+    public static final LatencyHistogram GOOGLE_LOAD = timer("load.google1000");
+
+    // Simplifying
+    public static final Counter TOKENS = counter("simplify.tokens");
+    public static final Counter LINES = counter("simplify.lines");
+    public static final Counter ROW_MEMO_HITS = counter("simplify.rowMemoHits");
+    public static final Counter CACHE_HITS = counter("cache.hits");
+    public static final Counter CACHE_MISSES = counter("cache.misses");
+
+    // Full precision scores of a query against one Google-1000 row, in this process or a shard worker. The exact and
+    // sharded searches count every row, the others only the rows they score in full. Cheaper scores that only pick
+    // candidates (int8, projected, partial) have their own counters, so the -Dsimplifier.search modes compare.
+    public static final Counter SIMILARITY_EVALUATIONS = counter("search.similarityEvaluations");
+    public static final LatencyHistogram FILE_LATENCY = timer("simplify.file");
+    public static final LatencyHistogram LINE_LATENCY = timer("simplify.line");
+
+    /**
+     * A named, thread-safe counter.
+     */
+    public static final class Counter {
+        private final LongAdder value = new LongAdder();
+
+        public void increment() {
+            value.increment();
+        }
+
+        public void add(long amount) {
+            value.add(amount);
+        }
+
+        public long sum() {
+            return value.sum();
+        }
+    }
+
+    private Metrics() {
+    }
+
+    // Gets or creates a counter
+    public static Counter counter(String name) {
+        return COUNTERS.computeIfAbsent(name, key -> new Counter());
+    }
+
+    // Gets or creates a timer
+    public static LatencyHistogram timer(String name) {
+        return TIMERS.computeIfAbsent(name, key -> new LatencyHistogram());
+    }
+
+    // Registers a gauge, replacing any gauge with the same name
+    public static void gauge(String name, LongSupplier value) {
+        GAUGES.put(name, value);
+    }
+
+    /**
+     * Reads every value. Each timer gives name.count, name.meanMicros, name.p50Micros, name.p90Micros,
+     * name.p99Micros and name.maxMicros.
+     *
+     * @return The values, sorted by name.
+     */
+    public static Map<String, Long> snapshot() {
+        Map<String, Long> values = new TreeMap<>();
+        COUNTERS.forEach((name, counter) -> values.put(name, counter.sum()));
+        GAUGES.forEach((name, gauge) -> values.put(name, gauge.getAsLong()));
+        TIMERS.forEach((name, timer) -> {
+            values.put(name + ".count", timer.count());
+            values.put(name + ".meanMicros", timer.meanMicros());
+            values.put(name + ".p50Micros", timer.percentileMicros(50));
+            values.put(name + ".p90Micros", timer.percentileMicros(90));
+            values.put(name + ".p99Micros", timer.percentileMicros(99));
+            values.put(name + ".maxMicros", timer.maxMicros());
+        });
+        return values;
+    }
+
+    // Every value as one line of JSON, with the time it was read
+    public static String toJson() {
+        StringBuilder json = new StringBuilder("{\"time\":\"").append(Instant.now()).append('"');
+        snapshot().forEach((name, value) -> json.append(",\"").append(name).append("\":").append(value));
+        return json.append('}').toString();
+    }
+
+    /**
+     * Registers the MBean ie.atu.sw:type=Metrics with the platform MBean server. Calling it again does nothing.
+     */
+    public static synchronized void registerMBean() {
+        try {
+            ObjectName name = new ObjectName("ie.atu.sw:type=Metrics");
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new MetricsMBean(), name);
+            }
+        } catch (JMException e) {
+            System.out.println("Metrics MBean not registered: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Appends {@link #toJson()} to a file at a fixed interval, and once more when the JVM exits.
+     *
+     * @param file            The JSON lines file.
+     * @param intervalSeconds Seconds between lines.
+     */
+    public static void startDump(Path file, long intervalSeconds) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(() -> append(file), intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            scheduler.shutdownNow();
+            append(file);
+        }));
+    }
+
+    private static synchronized void append(Path file) {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND)) {
+            writer.write(toJson());
+            writer.newLine();
+        } catch (IOException e) {
+            System.out.println("Metrics dump failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Shows the snapshot as read-only long attributes. The attribute list is built on every call, so counters,
+     * gauges and timers created later show up too.
+     */
+    private static final class MetricsMBean implements DynamicMBean {
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Long value = snapshot().get(attribute);
+            if (value == null) {
+                throw new AttributeNotFoundException(attribute);
+            }
+            return value;
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            Map<String, Long> values = snapshot();
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                if (values.containsKey(attribute)) {
+                    list.add(new Attribute(attribute, values.get(attribute)));
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Metrics are read-only");
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String action, Object[] params, String[] signature) throws MBeanException {
+            throw new MBeanException(new UnsupportedOperationException(action));
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            MBeanAttributeInfo[] attributes = snapshot().keySet().stream()
+                    .map(name -> new MBeanAttributeInfo(name, "long", name, true, false, false))
+                    .toArray(MBeanAttributeInfo[]::new);
+            return new MBeanInfo(Metrics.class.getName(), "Text simplifier metrics", attributes, null, null, null);
+        }
+    }
+}
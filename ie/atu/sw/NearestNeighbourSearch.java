@@ -0,0 +1,40 @@
+package ie.atu.sw;
+
+/**
+ * Finds the most similar row of a {@link VocabularyIndex} for a query vector.
+ */
+@FunctionalInterface
+public interface NearestNeighbourSearch {
+    /**
+     * Finds the row with the highest cosine similarity to the query.
+     *
+     * @param query The query vector, normalized with {@link VocabularyIndex#normalize(double[])}.
+     * @return The best row, or -1 if the index is empty.
+     */
+    int nearest(float[] query);
+
+    /**
+     * Finds the best row for every query. Searches that can share work between queries (such as the blocked exact
+     * search or a search on other processes) override this. By default each query is searched on its own.
+     *
+     * @param queries Normalized query vectors.
+     * @return The best row for each query, in the same order, or -1 if the index is empty.
+     */
+    default int[] nearestAll(float[][] queries) {
+        int[] rows = new int[queries.length];
+        for (int i = 0; i < queries.length; i++) {
+            rows[i] = nearest(queries[i]);
+        }
+        return rows;
+    }
+
+    /**
+     * Exact search, a full scan of the index.
+     *
+     * @param index The vocabulary index to search.
+     * @return The search.
+     */
+    static ExactSearch exact(VocabularyIndex index) {
+        return new ExactSearch(index);
+    }
+}
@@ -0,0 +1,120 @@
+package ie.atu.sw;
+
+import java.util.Map;
+
+/**
+ * Embeddings held on the heap in full precision, packed for reading.
+ *
+ * <p>The words are kept in a {@link WordTable} and the vectors in one row-major double[] (row i starts at
+ * i * dimensions). Nothing is written after loading, so lookups need no locking, and there is one array for all the
+ * vectors instead of one per word.</p>
+ */
+public class PackedEmbeddingStore implements EmbeddingStore {
+    private final WordTable table;
+    private final double[] vectors;
+    private final int dimensions;
+
+    private PackedEmbeddingStore(WordTable table, double[] vectors, int dimensions) {
+        this.table = table;
+        this.vectors = vectors;
+        this.dimensions = dimensions;
+    }
+
+    /**
+     * Copies the vectors of a map into a new store. The map can be dropped afterwards.
+     *
+     * <p><b>Big-O Notation is O(n * m)</b> -> n = Number of words and m = Length of each vector.</p>
+     *
+     * @param embeddings The vectors, as parsed.
+     * @return The new store.
+     * @throws IllegalArgumentException If the vectors are of different lengths or don't fit in one array.
+     */
+    public static PackedEmbeddingStore pack(Map<String, double[]> embeddings) {
+        String[] words = embeddings.keySet().toArray(new String[0]);
+        int dimensions = words.length == 0 ? 0 : embeddings.get(words[0]).length;
+        long components = (long) words.length * dimensions;
+        if (components > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Too many components for one array: " + components);
+        }
+
+        double[] vectors = new double[(int) components];
+        for (int row = 0; row < words.length; row++) {
+            double[] vector = embeddings.get(words[row]);
+            if (vector.length != dimensions) {
+                throw new IllegalArgumentException("Vectors must have the same length");
+            }
+            System.arraycopy(vector, 0, vectors, row * dimensions, dimensions);
+        }
+        return new PackedEmbeddingStore(WordTable.of(words), vectors, dimensions);
+    }
+
+    @Override
+    public double[] get(String word) {
+        int row = table.row(word);
+        return row < 0 ? null : vector(row);
+    }
+
+    @Override
+    public boolean contains(String word) {
+        return table.row(word) >= 0;
+    }
+
+    /**
+     * Finds the row of a word without making a String, see {@link WordTable#row(CharSequence)}.
+     *
+     * @param word The word.
+     * @return The row, or -1 if the word has no embeddings.
+     */
+    @Override
+    public int row(CharSequence word) {
+        return table.row(word);
+    }
+
+    @Override
+    public String word(int row) {
+        return table.word(row);
+    }
+
+    /**
+     * Finds the row of a word given as UTF-8 bytes, see {@link WordTable#row(byte[], int, int)}.
+     *
+     * @param utf8 The buffer holding the word.
+     * @param from The first byte of the word.
+     * @param to   The end of the word (exclusive).
+     * @return The row, or -1 if the word has no embeddings.
+     */
+    public int row(byte[] utf8, int from, int to) {
+        return table.row(utf8, from, to);
+    }
+
+    // A copy of the vector in a row
+    public double[] vector(int row) {
+        double[] vector = new double[dimensions];
+        System.arraycopy(vectors, row * dimensions, vector, 0, dimensions);
+        return vector;
+    }
+
+    @Override
+    public int size() {
+        return table.size();
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+
+    @Override
+    public String[] words() {
+        String[] words = new String[table.size()];
+        for (int row = 0; row < words.length; row++) {
+            words[row] = table.word(row);
+        }
+        return words;
+    }
+
+    // Bytes used by the vector block
+    public long vectorBytes() {
+        return (long) vectors.length * Double.BYTES;
+    }
+}
@@ -0,0 +1,339 @@
+package ie.atu.sw;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Exact nearest-neighbour search that stops scoring a candidate as soon as it can no longer beat the best so far.
+ *
+ * <p>Three things make that happen early:</p>
+ * <ul>
+ *     <li>The dimensions are reordered by variance, highest first, so the first components of the dot product carry
+ *     most of its value.</li>
+ *     <li>Every row keeps the norm of what is left of it after each block of {@link #BLOCK} dimensions. By
+ *     Cauchy-Schwarz the rest of the dot product is at most the query's remaining norm times the row's, so once
+ *     the partial sum plus that bound is below the best score the row is abandoned.</li>
+ *     <li>The rows are grouped into clusters (k-means) and the clusters are visited best centroid first, so a good
+ *     best score is found almost at once. A whole cluster is skipped when the query's score with the centroid plus
+ *     the cluster's radius is below the best score.</li>
+ * </ul>
+ *
+ * <p>The result is exact: a row only wins after its full score has been computed with the same kernel as
+ * {@link ExactSearch}, ties go to the lower row, and every bound is loosened by {@link SimilarityKernel#TOLERANCE}
+ * to cover float rounding. The multiply-adds saved are counted in search.skippedMultiplyAdds.</p>
+ *
+ * <p>Each bound check costs a branch and, with the Vector API kernel, a horizontal add. The exact SIMD scan is fast
+ * enough that about half the multiply-adds have to be skipped just to break even, so this pays off most with the
+ * scalar kernel or when the vectors have a few strong directions. Use the pruning-report mode to check.</p>
+ */
+public class PrunedSearch implements NearestNeighbourSearch {
+    // Dimensions scored between two bound checks
+    static final int BLOCK = 64;
+
+    // k-means rounds when building the clusters
+    private static final int ITERATIONS = 8;
+
+    // Metrics
+    private static final Metrics.Counter SKIPPED = Metrics.counter("search.skippedMultiplyAdds");
+
+    private final VocabularyIndex index;
+    private final SimilarityKernel kernel;
+    private final int dimensions;
+    private final int blocks;
+
+    // Dimension order, permuted[i] = original[order[i]]
+    private final int[] order;
+
+    // Rows with permuted dimensions, grouped by cluster. rowAt[p] is the index row stored at position p.
+    private final float[] rows;
+    private final int[] rowAt;
+
+    // Norm of each stored row from block b onward, (blocks + 1) values per row
+    private final float[] tails;
+
+    // Clusters: centroids with permuted dimensions, radius, and positions clusterStart[c] to clusterStart[c + 1]
+    private final float[] centroids;
+    private final float[] radii;
+    private final int[] clusterStart;
+
+    /**
+     * Orders the dimensions, clusters the rows and calculates the block norms.
+     *
+     * <p><b>Big-O Notation is O(i * n * c * m)</b> -> i = k-means rounds, n = Number of words in the index,
+     * c = Number of clusters (about the square root of n) and m = Length of each vector.</p>
+     *
+     * @param index The index to search.
+     */
+    public PrunedSearch(VocabularyIndex index) {
+        this.index = index;
+        this.kernel = SimilarityKernel.select();
+        this.dimensions = index.dimensions;
+        this.blocks = Math.max(1, (dimensions + BLOCK - 1) / BLOCK);
+        int n = index.size();
+
+        // Highest variance dimensions first
+        this.order = varianceOrder(index);
+        float[] permuted = new float[n * dimensions];
+        for (int row = 0; row < n; row++) {
+            permute(index.matrix, row * dimensions, permuted, row * dimensions);
+        }
+
+        // Cluster the rows and store them cluster by cluster
+        int clusters = Math.max(1, Math.min(n, (int) Math.round(Math.sqrt(n))));
+        this.centroids = new float[clusters * dimensions];
+        int[] assignment = cluster(permuted, n, clusters);
+
+        this.clusterStart = new int[clusters + 1];
+        for (int row = 0; row < n; row++) {
+            clusterStart[assignment[row] + 1]++;
+        }
+        for (int c = 0; c < clusters; c++) {
+            clusterStart[c + 1] += clusterStart[c];
+        }
+        this.rows = new float[n * dimensions];
+        this.rowAt = new int[n];
+        this.radii = new float[clusters];
+        int[] next = Arrays.copyOf(clusterStart, clusters);
+        for (int row = 0; row < n; row++) {
+            int c = assignment[row];
+            int position = next[c]++;
+            rowAt[position] = row;
+            System.arraycopy(permuted, row * dimensions, rows, position * dimensions, dimensions);
+            radii[c] = (float) Math.max(radii[c], Math.sqrt(distanceSquared(permuted, row * dimensions, c)));
+        }
+
+        // Remaining norm of every row after each block
+        this.tails = new float[n * (blocks + 1)];
+        for (int position = 0; position < n; position++) {
+            double sum = 0;
+            for (int b = blocks - 1; b >= 0; b--) {
+                for (int i = b * BLOCK; i < Math.min(dimensions, (b + 1) * BLOCK); i++) {
+                    float value = rows[position * dimensions + i];
+                    sum += value * value;
+                }
+                tails[position * (blocks + 1) + b] = (float) Math.sqrt(sum);
+            }
+        }
+    }
+
+    /**
+     * Finds the best row for the query.
+     *
+     * <p><b>Big-O Notation is O(n * m)</b> -> n = Number of words in the index and m = Length of each vector in the
+     * worst case, like the exact scan. Usually most clusters and rows are abandoned after a block or two.</p>
+     *
+     * @param query The normalized query vector.
+     * @return The best row, or -1 if the index is empty.
+     */
+    @Override
+    public int nearest(float[] query) {
+        float[] permutedQuery = new float[dimensions];
+        permute(query, 0, permutedQuery, 0);
+
+        // Remaining norm of the query after each block
+        float[] queryTails = new float[blocks + 1];
+        double sum = 0;
+        for (int b = blocks - 1; b >= 0; b--) {
+            for (int i = b * BLOCK; i < Math.min(dimensions, (b + 1) * BLOCK); i++) {
+                sum += permutedQuery[i] * permutedQuery[i];
+            }
+            queryTails[b] = (float) Math.sqrt(sum);
+        }
+
+        // Best centroid first
+        int clusters = radii.length;
+        float[] centroidScores = new float[clusters];
+        Integer[] visit = new Integer[clusters];
+        for (int c = 0; c < clusters; c++) {
+            centroidScores[c] = kernel.dot(permutedQuery, centroids, c * dimensions);
+            visit[c] = c;
+        }
+        Arrays.sort(visit, (a, b) -> Float.compare(centroidScores[b], centroidScores[a]));
+
+        int best = -1;
+        float bestScore = Float.NEGATIVE_INFINITY;
+        long skipped = 0;
+        long evaluated = 0;
+        for (int c : visit) {
+            // Skip the cluster if even its closest possible row can't win
+            if (centroidScores[c] + radii[c] + SimilarityKernel.TOLERANCE < bestScore) {
+                skipped += (long) (clusterStart[c + 1] - clusterStart[c]) * dimensions;
+                continue;
+            }
+
+            for (int position = clusterStart[c]; position < clusterStart[c + 1]; position++) {
+                int skippedDimensions = partialScore(permutedQuery, queryTails, position, bestScore);
+                if (skippedDimensions >= 0) {
+                    skipped += skippedDimensions;
+                    continue;
+                }
+
+                // Close to the best, so the exact score decides (same kernel and order as the exact search)
+                int row = rowAt[position];
+                float score = kernel.dot(query, index.matrix, row * dimensions);
+                evaluated++;
+                if (score > bestScore || (score == bestScore && row < best)) {
+                    best = row;
+                    bestScore = score;
+                }
+            }
+        }
+        SKIPPED.add(skipped);
+        Metrics.SIMILARITY_EVALUATIONS.add(evaluated);
+        return best;
+    }
+
+    /**
+     * Scores one stored row block by block until its upper bound drops below the best score.
+     *
+     * @param query      The query with permuted dimensions.
+     * @param queryTails The remaining norm of the query after each block.
+     * @param position   The position of the row in {@link #rows}.
+     * @param bestScore  The best score so far.
+     * @return The number of dimensions skipped if the row can't win, or -1 if it is close enough to the best score
+     * to need the exact score.
+     */
+    private int partialScore(float[] query, float[] queryTails, int position, float bestScore) {
+        int offset = position * dimensions;
+        int tailOffset = position * (blocks + 1);
+        float partial = 0f;
+        for (int b = 0; b < blocks; b++) {
+            // Upper bound of the full score from what is known so far
+            if (partial + queryTails[b] * tails[tailOffset + b] + SimilarityKernel.TOLERANCE < bestScore) {
+                return dimensions - b * BLOCK;
+            }
+            partial += kernel.dot(query, b * BLOCK, Math.min(dimensions, (b + 1) * BLOCK), rows, offset);
+        }
+        return partial + SimilarityKernel.TOLERANCE < bestScore ? 0 : -1;
+    }
+
+    /**
+     * Compares the search with the exact search on the same queries. Both are run five times and the last run is
+     * timed, as the bound checks take longer than the plain scan for the JIT to settle.
+     *
+     * @param exact   The exact search.
+     * @param queries Normalized query vectors.
+     * @return One line with the agreement, the share of multiply-adds skipped and the time per query.
+     */
+    public String report(NearestNeighbourSearch exact, List<float[]> queries) {
+        int[] expected = new int[queries.size()];
+        long exactTime = 0;
+        long prunedTime = 0;
+        long skipped = 0;
+        int agree = 0;
+        for (int pass = 0; pass < 5; pass++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < expected.length; i++) {
+                expected[i] = exact.nearest(queries.get(i));
+            }
+            exactTime = System.nanoTime() - start;
+
+            agree = 0;
+            skipped = SKIPPED.sum();
+            start = System.nanoTime();
+            for (int i = 0; i < expected.length; i++) {
+                if (nearest(queries.get(i)) == expected[i]) {
+                    agree++;
+                }
+            }
+            prunedTime = System.nanoTime() - start;
+            skipped = SKIPPED.sum() - skipped;
+        }
+
+        int count = Math.max(1, queries.size());
+        double total = (double) count * index.size() * dimensions;
+        return String.format("pruned   clusters=%-3d blocks=%-2d agreement=%6.2f%% skipped=%5.1f%% of multiply-adds "
+                        + "exact=%6.1fus/query pruned=%6.1fus/query speedup=%.1fx", radii.length, blocks,
+                100.0 * agree / count, 100.0 * skipped / Math.max(1, total), exactTime / 1000.0 / count,
+                prunedTime / 1000.0 / count, (double) exactTime / Math.max(1, prunedTime));
+    }
+
+    private void permute(float[] source, int offset, float[] target, int targetOffset) {
+        for (int i = 0; i < dimensions; i++) {
+            target[targetOffset + i] = source[offset + order[i]];
+        }
+    }
+
+    // Dimensions sorted by the variance of the rows, highest first
+    private static int[] varianceOrder(VocabularyIndex index) {
+        int m = index.dimensions;
+        double[] sum = new double[m];
+        double[] sumSquares = new double[m];
+        for (int row = 0; row < index.size(); row++) {
+            for (int i = 0; i < m; i++) {
+                double value = index.matrix[row * m + i];
+                sum[i] += value;
+                sumSquares[i] += value * value;
+            }
+        }
+        int n = Math.max(1, index.size());
+        double[] variance = new double[m];
+        Integer[] order = new Integer[m];
+        for (int i = 0; i < m; i++) {
+            variance[i] = sumSquares[i] / n - (sum[i] / n) * (sum[i] / n);
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(variance[b], variance[a]));
+        return Arrays.stream(order).mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Groups the rows with k-means (Euclidean distance), starting from evenly spaced rows so the result is the same
+     * on every run. Fills in the centroids.
+     *
+     * @param matrix   The rows with permuted dimensions.
+     * @param n        The number of rows.
+     * @param clusters The number of clusters.
+     * @return The cluster of every row.
+     */
+    private int[] cluster(float[] matrix, int n, int clusters) {
+        for (int c = 0; c < clusters; c++) {
+            System.arraycopy(matrix, (int) ((long) c * n / clusters) * dimensions, centroids, c * dimensions,
+                    dimensions);
+        }
+
+        int[] assignment = new int[n];
+        double[] sums = new double[clusters * dimensions];
+        int[] counts = new int[clusters];
+        for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+            for (int row = 0; row < n; row++) {
+                int closest = 0;
+                double closestDistance = Double.POSITIVE_INFINITY;
+                for (int c = 0; c < clusters; c++) {
+                    double distance = distanceSquared(matrix, row * dimensions, c);
+                    if (distance < closestDistance) {
+                        closestDistance = distance;
+                        closest = c;
+                    }
+                }
+                assignment[row] = closest;
+            }
+
+            // Move every centroid to the mean of its rows, empty clusters stay where they are
+            Arrays.fill(sums, 0);
+            Arrays.fill(counts, 0);
+            for (int row = 0; row < n; row++) {
+                int c = assignment[row];
+                counts[c]++;
+                for (int i = 0; i < dimensions; i++) {
+                    sums[c * dimensions + i] += matrix[row * dimensions + i];
+                }
+            }
+            for (int c = 0; c < clusters; c++) {
+                for (int i = 0; counts[c] > 0 && i < dimensions; i++) {
+                    centroids[c * dimensions + i] = (float) (sums[c * dimensions + i] / counts[c]);
+                }
+            }
+        }
+        return assignment;
+    }
+
+    private double distanceSquared(float[] matrix, int offset, int cluster) {
+        double sum = 0;
+        for (int i = 0; i < dimensions; i++) {
+            double difference = matrix[offset + i] - centroids[cluster * dimensions + i];
+            sum += difference * difference;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,179 @@
+package ie.atu.sw;
+
+import java.util.Map;
+
+/**
+ * Embeddings held on the heap in a compact, quantized form.
+ *
+ * <p>All vectors live in one flat block instead of one double[] per word:</p>
+ * <ul>
+ *     <li>INT8 stores every component as a signed byte, with one float scale per vector (component = code * scale).
+ *     This is 8x smaller than doubles.</li>
+ *     <li>FLOAT16 stores every component as a half precision float. This is 4x smaller than doubles and keeps about
+ *     3 significant digits.</li>
+ * </ul>
+ *
+ * <p>{@link #get(String)} gives back an approximate double[] so the store works anywhere an {@link EmbeddingStore}
+ * is expected. Cosine similarity only depends on the direction of the vectors, and the rounding moves the direction
+ * very little.</p>
+ */
+public class QuantizedEmbeddingStore implements EmbeddingStore {
+    /**
+     * The storage formats, with the number of bytes per component.
+     */
+    public enum Encoding {
+        INT8(1), FLOAT16(2);
+
+        final int bytes;
+
+        Encoding(int bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    private final Encoding encoding;
+    private final WordTable table;
+    private final int dimensions;
+
+    // INT8 codes and scales, or FLOAT16 bits (the other arrays are empty)
+    private final byte[] codes;
+    private final float[] scales;
+    private final short[] halves;
+
+    private QuantizedEmbeddingStore(Encoding encoding, String[] words, int dimensions) {
+        this.encoding = encoding;
+        this.dimensions = dimensions;
+        this.table = WordTable.of(words);
+
+        long components = (long) words.length * dimensions;
+        if (components > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Too many components to quantize: " + components);
+        }
+        this.codes = new byte[encoding == Encoding.INT8 ? (int) components : 0];
+        this.scales = new float[encoding == Encoding.INT8 ? words.length : 0];
+        this.halves = new short[encoding == Encoding.FLOAT16 ? (int) components : 0];
+    }
+
+    /**
+     * Quantizes every vector of a map into a new store. The map can be dropped afterwards.
+     *
+     * <p><b>Big-O Notation is O(n * m)</b> -> n = Number of words and m = Length of each vector.</p>
+     *
+     * @param embeddings The full precision vectors.
+     * @param encoding   The storage format.
+     * @return The new store.
+     * @throws IllegalArgumentException If the vectors are of different lengths.
+     */
+    public static QuantizedEmbeddingStore quantize(Map<String, double[]> embeddings, Encoding encoding) {
+        String[] words = embeddings.keySet().toArray(new String[0]);
+        int dimensions = words.length == 0 ? 0 : embeddings.get(words[0]).length;
+        QuantizedEmbeddingStore store = new QuantizedEmbeddingStore(encoding, words, dimensions);
+
+        for (int row = 0; row < words.length; row++) {
+            double[] vector = embeddings.get(words[row]);
+            if (vector.length != dimensions) {
+                throw new IllegalArgumentException("Vectors must have the same length");
+            }
+
+            int offset = row * dimensions;
+            if (encoding == Encoding.INT8) {
+                store.scales[row] = quantize(vector, store.codes, offset);
+            } else {
+                for (int i = 0; i < dimensions; i++) {
+                    store.halves[offset + i] = Float.floatToFloat16((float) vector[i]);
+                }
+            }
+        }
+        return store;
+    }
+
+    /**
+     * Rounds a vector to signed bytes, scaled so the largest component becomes +/-127.
+     *
+     * @param vector The vector.
+     * @param codes  Where the bytes are written.
+     * @param offset The index of the first byte.
+     * @return The scale to multiply the bytes by to get the vector back.
+     */
+    static float quantize(double[] vector, byte[] codes, int offset) {
+        double largest = 0;
+        for (double value : vector) {
+            largest = Math.max(largest, Math.abs(value));
+        }
+        if (largest == 0 || !Double.isFinite(largest)) {
+            return 0f;
+        }
+
+        double scale = largest / 127.0;
+        for (int i = 0; i < vector.length; i++) {
+            codes[offset + i] = (byte) Math.round(vector[i] / scale);
+        }
+        return (float) scale;
+    }
+
+    @Override
+    public double[] get(String word) {
+        int row = table.row(word);
+        if (row < 0) {
+            return null;
+        }
+
+        double[] vector = new double[dimensions];
+        int offset = row * dimensions;
+        if (encoding == Encoding.INT8) {
+            float scale = scales[row];
+            for (int i = 0; i < dimensions; i++) {
+                vector[i] = codes[offset + i] * scale;
+            }
+        } else {
+            for (int i = 0; i < dimensions; i++) {
+                vector[i] = Float.float16ToFloat(halves[offset + i]);
+            }
+        }
+        return vector;
+    }
+
+    @Override
+    public boolean contains(String word) {
+        return table.row(word) >= 0;
+    }
+
+    // Finds the row of a word without making a String, see WordTable
+    @Override
+    public int row(CharSequence word) {
+        return table.row(word);
+    }
+
+    @Override
+    public String word(int row) {
+        return table.word(row);
+    }
+
+    @Override
+    public int size() {
+        return table.size();
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+
+    @Override
+    public String[] words() {
+        String[] words = new String[table.size()];
+        for (int row = 0; row < words.length; row++) {
+            words[row] = table.word(row);
+        }
+        return words;
+    }
+
+    public Encoding encoding() {
+        return encoding;
+    }
+
+    // Bytes used by the vector block (the words and the row map are not counted)
+    public long vectorBytes() {
+        return (long) codes.length + (long) scales.length * Float.BYTES + (long) halves.length * Short.BYTES;
+    }
+}
@@ -0,0 +1,115 @@
+package ie.atu.sw;
+
+/**
+ * Nearest-neighbour search on an int8 copy of a {@link VocabularyIndex}.
+ *
+ * <p>Every row is stored as signed bytes with its own scale, a quarter of the size of the float matrix, so four
+ * times as many rows fit in each cache line. The query is quantized the same way and the dot products are added up
+ * as ints. The scores are close to the exact ones but can swap words that are almost tied, so the best few
+ * candidates can be re-ranked with the exact float vectors.</p>
+ */
+public class QuantizedSearch implements NearestNeighbourSearch {
+    // Metrics
+    private static final Metrics.Counter QUANTIZED_EVALUATIONS = Metrics.counter("search.quantizedEvaluations");
+
+    private final VocabularyIndex index;
+    private final SimilarityKernel kernel;
+    private final byte[] codes;
+    private final float[] scales;
+    private final int rerank;
+
+    /**
+     * Quantizes the index.
+     *
+     * <p><b>Big-O Notation is O(n * m)</b> -> n = Number of words in the index and m = Length of each vector.</p>
+     *
+     * @param index  The index to search.
+     * @param rerank The number of candidates re-ranked with the exact vectors, 0 or 1 to use the int8 scores only.
+     */
+    public QuantizedSearch(VocabularyIndex index, int rerank) {
+        this.index = index;
+        this.kernel = SimilarityKernel.select();
+        this.rerank = Math.max(1, rerank);
+        this.codes = new byte[index.matrix.length];
+        this.scales = new float[index.size()];
+
+        double[] row = new double[index.dimensions];
+        for (int r = 0; r < index.size(); r++) {
+            int offset = r * index.dimensions;
+            for (int i = 0; i < row.length; i++) {
+                row[i] = index.matrix[offset + i];
+            }
+            scales[r] = QuantizedEmbeddingStore.quantize(row, codes, offset);
+        }
+    }
+
+    /**
+     * Finds the best row for the query.
+     *
+     * <p><b>Big-O Notation is O(n * m + r * m)</b> -> n = Number of words in the index, m = Length of each vector
+     * and r = Number of candidates re-ranked.</p>
+     *
+     * @param query The normalized query vector.
+     * @return The best row, or -1 if the index is empty.
+     */
+    @Override
+    public int nearest(float[] query) {
+        int dimensions = index.dimensions;
+        double[] widened = new double[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            widened[i] = query[i];
+        }
+        byte[] quantized = new byte[dimensions];
+        QuantizedEmbeddingStore.quantize(widened, quantized, 0);
+
+        // Best candidates by int8 score (the query scale is the same for every row, so it is left out)
+        int[] rows = new int[Math.min(rerank, index.size())];
+        float[] scores = new float[rows.length];
+        int count = 0;
+        for (int row = 0, offset = 0; row < index.size(); row++, offset += dimensions) {
+            count = ExactSearch.offer(rows, scores, count, row, dot(quantized, offset) * scales[row]);
+        }
+        // Only the re-ranked rows get a full precision score
+        QUANTIZED_EVALUATIONS.add(index.size());
+        Metrics.SIMILARITY_EVALUATIONS.add(count <= 1 ? 0 : count);
+        if (count <= 1) {
+            return count == 0 ? -1 : rows[0];
+        }
+
+        // Exact scores for the candidates, ties go to the lower row like the exact search
+        int best = -1;
+        float bestScore = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            float score = kernel.dot(query, index.matrix, rows[i] * dimensions);
+            if (score > bestScore || (score == bestScore && rows[i] < best)) {
+                best = rows[i];
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    // Integer dot product of the query with one row, four accumulators break the dependency chain
+    private int dot(byte[] query, int offset) {
+        int sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+        int length = query.length;
+        int i = 0;
+        for (; i + 3 < length; i += 4) {
+            sum0 += query[i] * codes[offset + i];
+            sum1 += query[i + 1] * codes[offset + i + 1];
+            sum2 += query[i + 2] * codes[offset + i + 2];
+            sum3 += query[i + 3] * codes[offset + i + 3];
+        }
+
+        // Leftover components
+        for (; i < length; i++) {
+            sum0 += query[i] * codes[offset + i];
+        }
+        return (sum0 + sum1) + (sum2 + sum3);
+    }
+
+    // Bytes used by the int8 rows and their scales
+    public long bytes() {
+        return codes.length + (long) scales.length * Float.BYTES;
+    }
+}
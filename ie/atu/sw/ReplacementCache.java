@@ -0,0 +1,224 @@
+package ie.atu.sw;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded, thread-safe cache of word to replacement results.
+ *
+ * <p>Natural text repeats the same words over and over, so remembering the answer of the similarity search saves
+ * almost all of the work. When the cache is full the least recently used word is evicted (LRU). The cache is not
+ * tied to a single file, so one instance can be shared by every file processed with the same embeddings and
+ * Google-1000 list.</p>
+ *
+ * <p>Words the resolver has no replacement for (a null answer) are cached too, as {@link #NO_REPLACEMENT}, so the
+ * same unknown word isn't searched again. Every method stores and returns them the same way.</p>
+ */
+public class ReplacementCache {
+    // Stands for a null answer in the map, compared by identity
+    private static final String NO_REPLACEMENT = new String("");
+
+    private final int maxSize;
+    private final Map<String, String> entries;
+
+    // Statistics
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param maxSize The maximum number of words kept.
+     * @throws IllegalArgumentException If the size is not positive.
+     */
+    public ReplacementCache(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive");
+        }
+        this.maxSize = maxSize;
+
+        // Access ordered map, so the eldest entry is always the least recently used one
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                if (size() > ReplacementCache.this.maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached replacement for the word, or asks the resolver and stores the answer.
+     *
+     * <p>The resolver is called outside the lock, so a slow search never blocks other threads. Two threads missing
+     * on the same word may both resolve it, which is harmless as they get the same answer.</p>
+     *
+     * <p><b>Big-O Notation is O(1)</b> for a hit, plus the cost of the resolver for a miss.</p>
+     *
+     * @param word     The word from the input text.
+     * @param resolver Where to get the answer on a miss.
+     * @return The replacement for the word.
+     */
+    public String resolve(String word, WordResolver resolver) {
+        String replacement;
+        synchronized (entries) {
+            replacement = entries.get(word);
+        }
+        if (replacement != null) {
+            hits.increment();
+            Metrics.CACHE_HITS.increment();
+            return answer(replacement);
+        }
+
+        misses.increment();
+        Metrics.CACHE_MISSES.increment();
+        replacement = resolver.resolve(word);
+        synchronized (entries) {
+            entries.put(word, stored(replacement));
+        }
+        return replacement;
+    }
+
+    /**
+     * Puts this cache in front of the given resolver.
+     *
+     * @param resolver The resolver to call on a miss.
+     * @return A resolver that checks the cache first.
+     */
+    public WordResolver wrap(WordResolver resolver) {
+        return new WordResolver() {
+            @Override
+            public String resolve(String word) {
+                return ReplacementCache.this.resolve(word, resolver);
+            }
+
+            @Override
+            public Map<String, String> resolveAll(Collection<String> words) {
+                return ReplacementCache.this.resolveAll(words, resolver);
+            }
+
+            @Override
+            public String resolveWithin(String word, SimplificationJob.Effort effort) {
+                return ReplacementCache.this.resolveWithin(word, effort, resolver);
+            }
+        };
+    }
+
+    /**
+     * Returns the cached replacement for the word, or asks the resolver with the given effort. Only exact answers
+     * are stored, so a cheaper answer never outlives the job that asked for it.
+     *
+     * <p><b>Big-O Notation is O(1)</b> for a hit, plus the cost of the resolver for a miss.</p>
+     *
+     * @param word     The word from the input text.
+     * @param effort   The most work allowed on a miss.
+     * @param resolver Where to get the answer on a miss.
+     * @return The replacement, or null if it can't be found with that effort.
+     */
+    public String resolveWithin(String word, SimplificationJob.Effort effort, WordResolver resolver) {
+        if (effort == SimplificationJob.Effort.EXACT) {
+            return resolve(word, resolver);
+        }
+
+        String replacement;
+        synchronized (entries) {
+            replacement = entries.get(word);
+        }
+        if (replacement != null) {
+            hits.increment();
+            Metrics.CACHE_HITS.increment();
+            // A cached miss is the exact answer, so the word is kept rather than degraded
+            return replacement == NO_REPLACEMENT ? word : replacement;
+        }
+        return resolver.resolveWithin(word, effort);
+    }
+
+    /**
+     * Returns the cached replacements for a group of words. The misses are passed to the resolver together, so it
+     * can resolve them in one batch.
+     *
+     * @param words    The words, without duplicates.
+     * @param resolver Where to get the answers for the misses.
+     * @return A map of every word to its replacement.
+     */
+    public Map<String, String> resolveAll(Collection<String> words, WordResolver resolver) {
+        Map<String, String> replacements = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        synchronized (entries) {
+            for (String word : words) {
+                String replacement = entries.get(word);
+                if (replacement != null) {
+                    replacements.put(word, answer(replacement));
+                } else {
+                    missing.add(word);
+                }
+            }
+        }
+        hits.add(replacements.size());
+        misses.add(missing.size());
+        Metrics.CACHE_HITS.add(replacements.size());
+        Metrics.CACHE_MISSES.add(missing.size());
+        if (missing.isEmpty()) {
+            return replacements;
+        }
+
+        Map<String, String> resolved = resolver.resolveAll(missing);
+        synchronized (entries) {
+            for (Map.Entry<String, String> entry : resolved.entrySet()) {
+                entries.put(entry.getKey(), stored(entry.getValue()));
+            }
+        }
+        replacements.putAll(resolved);
+        return replacements;
+    }
+
+    // The value kept in the map for an answer of the resolver
+    private static String stored(String replacement) {
+        return replacement == null ? NO_REPLACEMENT : replacement;
+    }
+
+    // The answer for a value kept in the map
+    private static String answer(String stored) {
+        return stored == NO_REPLACEMENT ? null : stored;
+    }
+
+    // Removes every entry, e.g. when the embeddings or Google-1000 file change. Statistics are kept.
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "Replacement cache: " + size() + "/" + maxSize + " words, hits=" + hits() + ", misses=" + misses()
+                + ", evictions=" + evictions();
+    }
+}
@@ -0,0 +1,248 @@
+package ie.atu.sw;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32C;
+
+/**
+ * A precompiled word to replacement table.
+ *
+ * <p>The candidate words (every word in the embeddings file) and the targets (the Google-1000 words) never change
+ * between runs, so the closest target of every word can be worked out once and saved. Simplifying text with the
+ * table is then a plain hash lookup and the embeddings don't need to be loaded at all.</p>
+ *
+ * <p>File layout (big-endian, written with {@link DataOutputStream}):</p>
+ * <pre>
+ *   int    magic "RPLT"
+ *   int    version
+ *   long   checksum of the embeddings and Google-1000 files
+ *   int    number of targets, then each target word (UTF)
+ *   int    number of entries, then for each entry the word (UTF) and the target number
+ *          (unsigned short, or int if there are more than 65536 targets)
+ * </pre>
+ */
+public class ReplacementTable implements WordResolver {
+    private static final int MAGIC = 0x52504C54;
+    private static final int VERSION = 1;
+
+    // Words searched together when compiling
+    private static final int BLOCK_WORDS = 256;
+
+    // Word -> replacement, targets are shared String instances
+    private final Map<String, String> replacements;
+
+    private ReplacementTable(Map<String, String> replacements) {
+        this.replacements = replacements;
+    }
+
+    /**
+     * Looks up the precompiled replacement. Words not in the table have no embeddings, so they are kept.
+     *
+     * <p><b>Big-O Notation is O(1)</b> -> a single hash lookup.</p>
+     *
+     * @param word The word from the input text.
+     * @return The closest Google-1000 word, or the original word.
+     */
+    @Override
+    public String resolve(String word) {
+        return replacements.getOrDefault(word, word);
+    }
+
+    // Every answer is precompiled, so any effort gets the exact one
+    @Override
+    public String resolveWithin(String word, SimplificationJob.Effort effort) {
+        return resolve(word);
+    }
+
+    public int size() {
+        return replacements.size();
+    }
+
+    // Where the table for an embeddings file is saved unless told otherwise
+    public static String defaultPath(String embeddingsFile) {
+        return embeddingsFile + ".table";
+    }
+
+    /**
+     * Calculates a CRC32C checksum over the contents of both input files. A table is only used if it was compiled
+     * from files with the same checksum.
+     *
+     * <p><b>Big-O Notation is O(n)</b> -> n = Combined size of the files. Much cheaper than parsing them.</p>
+     *
+     * @param embeddingsFile Path to the embeddings file.
+     * @param google1000File Path to the Google-1000 file.
+     * @return The checksum.
+     * @throws IOException If either file can't be read.
+     */
+    public static long checksum(String embeddingsFile, String google1000File) throws IOException {
+        CRC32C crc = new CRC32C();
+        byte[] buffer = new byte[1 << 16];
+        for (String fileName : new String[]{embeddingsFile, google1000File}) {
+            try (InputStream in = new FileInputStream(fileName)) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    crc.update(buffer, 0, read);
+                }
+            }
+
+            // Separator so moving bytes from one file to the other changes the checksum
+            crc.update(0);
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Computes the closest Google-1000 word for every word in the embeddings and writes the table to a file.
+     *
+     * <p>The words are split into one chunk per compute thread and every chunk is searched as a task on the compute
+     * pool, see {@link ExecutionModel}.</p>
+     *
+     * <p><b>Big-O Notation is O(w * n * m)</b> -> w = Number of embedding words, n = Number of Google-1000 words and
+     * m = Length of each vector. Done once, offline.</p>
+     *
+     * @param dataManager A data manager with the embeddings and Google-1000 words loaded.
+     * @param checksum    The checksum of the files the data was loaded from.
+     * @param tableFile   Path for the table file.
+     * @throws IOException If the table can't be written or a search fails.
+     */
+    public static void compile(DataLoadingManager dataManager, long checksum, String tableFile) throws IOException {
+        compile(dataManager, checksum, tableFile, NearestNeighbourSearch.exact(dataManager.googleIndex));
+    }
+
+    /**
+     * Same as {@link #compile(DataLoadingManager, long, String)}, with another exact search such as a
+     * {@link ShardedSearch}.
+     *
+     * @param dataManager A data manager with the embeddings and Google-1000 words loaded.
+     * @param checksum    The checksum of the files the data was loaded from.
+     * @param tableFile   Path for the table file.
+     * @param search      The search over the Google-1000 index, it must give the same answers as the exact search.
+     * @throws IOException If the table can't be written or a search fails.
+     */
+    public static void compile(DataLoadingManager dataManager, long checksum, String tableFile,
+                               NearestNeighbourSearch search) throws IOException {
+        VocabularyIndex index = dataManager.googleIndex;
+        if (index.size() == 0) {
+            throw new IOException("None of the Google-1000 words have embeddings");
+        }
+        String[] words = dataManager.wordEmbeddings.words();
+        int[] targets = new int[words.length];
+
+        int chunks = ExecutionModel.parallelism();
+        int chunkSize = (words.length + chunks - 1) / chunks;
+
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int start = 0; start < words.length; start += chunkSize) {
+                final int from = start;
+                final int to = Math.min(words.length, start + chunkSize);
+
+                // Each chunk fills its own part of the targets array, on the compute pool
+                futures.add(ExecutionModel.compute().submit(() -> {
+                    // Words are searched in blocks with the batched exact search
+                    for (int blockStart = from; blockStart < to; blockStart += BLOCK_WORDS) {
+                        int blockEnd = Math.min(to, blockStart + BLOCK_WORDS);
+                        float[][] queries = new float[blockEnd - blockStart][];
+                        for (int i = blockStart; i < blockEnd; i++) {
+                            queries[i - blockStart] = index.normalize(dataManager.wordEmbeddings.get(words[i]));
+                        }
+
+                        int[] rows = search.nearestAll(queries);
+                        System.arraycopy(rows, 0, targets, blockStart, rows.length);
+                    }
+                }));
+            }
+
+            // Wait for every chunk, failures are reported instead of dropped
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to compile replacement table", e.getCause());
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+
+        write(tableFile, checksum, index, words, targets);
+        System.out.println("Replacement table compiled: " + words.length + " words -> " + tableFile);
+    }
+
+    private static void write(String tableFile, long checksum, VocabularyIndex index, String[] words, int[] targets) throws IOException {
+        boolean wide = index.size() > 65536;
+
+        // Write to a temporary file first so a crash never leaves a half written table behind
+        Path target = Path.of(tableFile);
+        Path temp = Path.of(tableFile + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp.toFile())))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(checksum);
+
+            out.writeInt(index.size());
+            for (int row = 0; row < index.size(); row++) {
+                out.writeUTF(index.word(row));
+            }
+
+            out.writeInt(words.length);
+            for (int i = 0; i < words.length; i++) {
+                out.writeUTF(words[i]);
+                if (wide) {
+                    out.writeInt(targets[i]);
+                } else {
+                    out.writeShort(targets[i]);
+                }
+            }
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Loads a table from a file if it exists and was compiled from the same input files.
+     *
+     * <p><b>Big-O Notation is O(w)</b> -> w = Number of entries in the table.</p>
+     *
+     * @param tableFile        Path to the table file.
+     * @param expectedChecksum The checksum of the current embeddings and Google-1000 files.
+     * @return The table, or null if there is no table or it is out of date.
+     * @throws IOException If the file exists but can't be read.
+     */
+    public static ReplacementTable load(String tableFile, long expectedChecksum) throws IOException {
+        File file = new File(tableFile);
+        if (!file.isFile()) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a replacement table: " + tableFile);
+            }
+            if (in.readLong() != expectedChecksum) {
+                System.out.println("Replacement table " + tableFile + " is out of date, ignoring it");
+                return null;
+            }
+
+            String[] targets = new String[in.readInt()];
+            for (int i = 0; i < targets.length; i++) {
+                targets[i] = in.readUTF();
+            }
+            boolean wide = targets.length > 65536;
+
+            int entries = in.readInt();
+            Map<String, String> replacements = new HashMap<>((int) (entries / 0.75f) + 1);
+            for (int i = 0; i < entries; i++) {
+                String word = in.readUTF();
+                int target = wide ? in.readInt() : in.readUnsignedShort();
+                replacements.put(word, targets[target]);
+            }
+            return new ReplacementTable(replacements);
+        }
+    }
+}
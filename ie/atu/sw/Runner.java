@@ -1,20 +1,152 @@
 package ie.atu.sw;
 
+import java.io.File;
 import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Scanner;
-import java.util.concurrent.Executors;
 
 public class Runner {
+    // Embeddings file the loaded data came from
+    private String cachedEmbeddingsFile;
+
+    // Target words built on those embeddings, with one replacement cache per version (size -Dsimplifier.cacheSize).
+    // Kept so later runs in the session don't load the embeddings again.
+    private TargetVocabulary targets;
+
+    // Shard workers started by this process, kept so reloads connect to the same ones
+    private static List<InetSocketAddress> localWorkers;
+
     /**
      * Entry point of the application. This method initializes an instance of the Runner class and calls the menu()
-     * method to give the user options. The application uses virtual thread for processing tasks concurrently.
+     * method to give the user options. The application uses virtual threads for I/O and a compute pool for the CPU
+     * work, see {@link ExecutionModel}.
+     *
+     * <p>Passing arguments runs one of the offline modes instead of the menu:</p>
+     * <pre>
+     *   compile &lt;embeddings&gt; &lt;google-1000&gt; [table]   Precompute the replacement of every word
+     *   convert &lt;text embeddings&gt; &lt;binary embeddings&gt;    Convert embeddings to the memory-mapped format
+     *   hnsw-report &lt;embeddings&gt; &lt;google-1000&gt; [queries] Compare HNSW search against the exact search
+     *   quantize-report &lt;embeddings&gt; &lt;google-1000&gt; [queries] Compare quantized storage and search against doubles
+     *   prefilter-report &lt;embeddings&gt; &lt;google-1000&gt; [queries] Compare projected search against the exact search
+     *   pruning-report &lt;embeddings&gt; &lt;google-1000&gt; [queries] Compare pruned search against the exact search
+     *   serve &lt;embeddings&gt; &lt;google-1000&gt; [port]        Run the simplification server
+     *   batch &lt;embeddings&gt; &lt;google-1000&gt; &lt;input dir or glob&gt; &lt;output dir&gt;  Simplify many files
+     *   worker [port] [bind address]                  Run a shard worker for -Dsimplifier.search=sharded
+     * </pre>
      *
      * @param args Command line arguments
      * @throws Exception if any errors occur during execution
      */
     public static void main(String[] args) throws Exception {
+        // Metrics over JMX, and as JSON lines if a file is given
+        Metrics.registerMBean();
+        String metricsFile = System.getProperty("simplifier.metrics.file");
+        if (metricsFile != null) {
+            Metrics.startDump(Path.of(metricsFile), Long.getLong("simplifier.metrics.interval", 10));
+        }
+
         Runner runner = new Runner();
-        runner.menu();
+        if (args.length == 0) {
+            runner.menu();
+            return;
+        }
+
+        switch (args[0]) {
+            case "compile" -> {
+                if (args.length < 3) {
+                    usage();
+                    return;
+                }
+                String tableFile = args.length > 3 ? args[3] : ReplacementTable.defaultPath(args[1]);
+                runner.compileTable(args[1], args[2], tableFile);
+            }
+            case "convert" -> {
+                if (args.length < 3) {
+                    usage();
+                    return;
+                }
+                MappedEmbeddingStore.convert(args[1], args[2]);
+            }
+            case "hnsw-report" -> {
+                if (args.length < 3) {
+                    usage();
+                    return;
+                }
+                runner.hnswReport(args[1], args[2], args.length > 3 ? Integer.parseInt(args[3]) : 2000);
+            }
+            case "quantize-report" -> {
+                if (args.length < 3) {
+                    usage();
+                    return;
+                }
+                runner.quantizeReport(args[1], args[2], args.length > 3 ? Integer.parseInt(args[3]) : 2000);
+            }
+            case "prefilter-report" -> {
+                if (args.length < 3) {
+                    usage();
+                    return;
+                }
+                runner.prefilterReport(args[1], args[2], args.length > 3 ? Integer.parseInt(args[3]) : 2000);
+            }
+            case "pruning-report" -> {
+                if (args.length < 3) {
+                    usage();
+                    return;
+                }
+                runner.pruningReport(args[1], args[2], args.length > 3 ? Integer.parseInt(args[3]) : 2000);
+            }
+            case "serve" -> {
+                if (args.length < 3) {
+                    usage();
+                    return;
+                }
+                runner.serve(args[1], args[2], args.length > 3 ? Integer.parseInt(args[3]) : 8080);
+            }
+            case "batch" -> {
+                if (args.length < 5) {
+                    usage();
+                    return;
+                }
+                runner.batch(args[1], args[2], args[3], args[4]);
+            }
+            case "worker" -> {
+                int port = args.length > 1 ? Integer.parseInt(args[1]) : 7070;
+                String bind = args.length > 2 ? args[2] : "127.0.0.1";
+                new ShardWorker(new InetSocketAddress(bind, port)).serve();
+            }
+            default -> usage();
+        }
+    }
+
+    // Prints the command line options
+    private static void usage() {
+        System.out.println("Usage: java ie.atu.sw.Runner [mode]");
+        System.out.println("  (no arguments)                              Interactive menu");
+        System.out.println("  compile <embeddings> <google-1000> [table]  Precompute the replacement of every word");
+        System.out.println("  convert <text embeddings> <binary>          Convert embeddings to the memory-mapped format");
+        System.out.println("  hnsw-report <embeddings> <google-1000> [n]  Compare HNSW search against the exact search");
+        System.out.println("  quantize-report <embeddings> <google-1000> [n]  Compare quantized storage against doubles");
+        System.out.println("  prefilter-report <embeddings> <google-1000> [n] Compare projected search against the exact search");
+        System.out.println("  pruning-report <embeddings> <google-1000> [n]   Compare pruned search against the exact search");
+        System.out.println("  serve <embeddings> <google-1000> [port]     Run the simplification server (default port 8080)");
+        System.out.println("  batch <embeddings> <google-1000> <input dir or glob> <output dir>");
+        System.out.println("                                              Simplify many files, skipping finished outputs");
+        System.out.println("  worker [port] [bind address]                Run a shard worker (default 7070 on 127.0.0.1)");
+        System.out.println("Options: -Dsimplifier.cacheSize=50000 -Dsimplifier.search=exact|hnsw|int8|pca|random|pruned|sharded");
+        System.out.println("         -Dsimplifier.storage=double|int8|float16|lazy -Dsimplifier.rerank=8");
+        System.out.println("         -Dsimplifier.projection.dims=32 -Dsimplifier.projection.shortlist=16");
+        System.out.println("         -Dsimplifier.shards=local:2|host:port,host:port,... (workers of the sharded search)");
+        System.out.println("         -Dsimplifier.batch.files=<cores> (files simplified at the same time)");
+        System.out.println("         -Dsimplifier.compute=forkjoin|platform|virtual -Dsimplifier.compute.threads=<cores>");
+        System.out.println("         -Dsimplifier.deadline=<ms> (time budget per file) -Dsimplifier.deadline.targets=250");
+        System.out.println("         -Dsimplifier.metrics.file=metrics.jsonl -Dsimplifier.metrics.interval=10 (seconds)");
+        System.out.println("         -Dsimplifier.hnsw.m=16 -Dsimplifier.hnsw.efConstruction=200 -Dsimplifier.hnsw.efSearch=64");
     }
 
     /**
@@ -88,6 +220,7 @@ public class Runner {
                         // After text simplification is complete
                         System.out.println(ConsoleColour.GREEN + "Text simplification complete!");
                         System.out.println(ConsoleColour.CYAN + "Output saved to: " + outputFile);
+                        System.out.println(ConsoleColour.CYAN + cacheSummary());
                     } catch (Exception e) {
                         System.out.println(ConsoleColour.RED + "Error: " + e.getMessage());
                     }
@@ -115,6 +248,10 @@ public class Runner {
      * input text file, replacing words with their closest matches from the Google-1000 list and saves them to the specified
      * output file.
      *
+     * <p>If a replacement table compiled from the same files exists next to the embeddings file, it is used and the
+     * embeddings are not loaded at all. Otherwise, the loaded data and the replacements are kept for the rest of the
+     * session, and only dropped when a different embeddings or Google-1000 file is used.</p>
+     *
      * @param embeddingsFile Path to the embeddings file.
      * @param google1000File Path to the Google-1000 file.
      * @param inputFile      Path to the input file.
@@ -122,17 +259,19 @@ public class Runner {
      * @throws Exception If an error occurs during processing.
      */
     private void simplifyWords(String embeddingsFile, String google1000File, String inputFile, String outputFile) throws IOException {
-        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+        try (var executor = ExecutionModel.newIoExecutor()) {
             executor.execute(() -> {
                 try {
-                    // Load embeddings and google-1000 words (using data loading manager class)
-                    DataLoadingManager dataManager = new DataLoadingManager();
-                    dataManager.loadWordEmbeddings(embeddingsFile);
-                    dataManager.loadGoogle1000Words(google1000File);
-
-                    // Process comparison and save output
-                    TextSimplifier processor = new TextSimplifier(dataManager.wordEmbeddings, dataManager.googleWords);
-                    processor.simplifyText(inputFile, outputFile);
+                    // Load embeddings and google-1000 words (or reuse them from the last run)
+                    TextSimplifier processor = simplifier(embeddingsFile, google1000File);
+
+                    // Process comparison and save output, with a progress meter in bytes of the input
+                    SimplificationJob job = SimplificationJob.fromProperties().onProgress(Runner::printProgress);
+                    processor.simplifyText(inputFile, outputFile, job);
+                    System.out.println();
+                    if (job.degradedTokens() > 0) {
+                        System.out.println(ConsoleColour.YELLOW + job.summary());
+                    }
                 } catch (Exception e) {
                     e.printStackTrace();
                 } finally {
@@ -142,6 +281,419 @@ public class Runner {
         }
     }
 
+    /**
+     * Sets up the simplifier for the given files. A precompiled table for the same files makes loading the
+     * embeddings unnecessary. Otherwise the data is loaded (see {@link #load(String, String)}) and searched, with
+     * the answers remembered in the cache of the current targets.
+     *
+     * @param embeddingsFile Path to the embeddings file.
+     * @param google1000File Path to the Google-1000 file.
+     * @return The simplifier to use.
+     * @throws IOException If an error occurs during loading.
+     */
+    private TextSimplifier simplifier(String embeddingsFile, String google1000File) throws IOException {
+        ReplacementTable table = table(embeddingsFile, google1000File);
+        if (table != null) {
+            return new TextSimplifier(table);
+        }
+
+        // The menu and batch modes run one document at a time and load before the next, so the current snapshot is
+        // never replaced (and its search closed) while it is in use
+        return load(embeddingsFile, google1000File).current().simplifier();
+    }
+
+    // The precompiled table for the given files, or null if there is no valid one
+    private static ReplacementTable table(String embeddingsFile, String google1000File) throws IOException {
+        String tableFile = ReplacementTable.defaultPath(embeddingsFile);
+        ReplacementTable table = new File(tableFile).isFile()
+                ? ReplacementTable.load(tableFile, ReplacementTable.checksum(embeddingsFile, google1000File))
+                : null;
+        if (table != null) {
+            System.out.println("Using precompiled replacement table (" + table.size() + " words)");
+        }
+        return table;
+    }
+
+    /**
+     * Returns the target words for the given files, loading only what isn't already loaded. A new embeddings file
+     * loads everything again. A new Google-1000 file with the same embeddings only builds a new version of the
+     * targets, which also starts a new replacement cache as the old answers are only valid for the old targets.
+     *
+     * @param embeddingsFile Path to the embeddings file.
+     * @param google1000File Path to the Google-1000 file.
+     * @return The loaded targets.
+     * @throws IOException If an error occurs during loading.
+     */
+    private TargetVocabulary load(String embeddingsFile, String google1000File) throws IOException {
+        if (targets == null || !embeddingsFile.equals(cachedEmbeddingsFile)) {
+            // The old targets' search goes with them
+            if (targets != null) {
+                targets.close();
+                targets = null;
+            }
+
+            DataLoadingManager dataManager = new DataLoadingManager();
+            dataManager.loadWordEmbeddings(embeddingsFile);
+
+            TargetVocabulary loaded = new TargetVocabulary(dataManager.wordEmbeddings,
+                    index -> search(embeddingsFile, index), Integer.getInteger("simplifier.cacheSize", 50_000));
+            loaded.load(google1000File);
+            targets = loaded;
+            cachedEmbeddingsFile = embeddingsFile;
+        } else if (!google1000File.equals(targets.current().file())) {
+            targets.load(google1000File);
+        }
+        return targets;
+    }
+
+    // Statistics of the replacement cache of the current targets
+    private String cacheSummary() {
+        return targets == null ? "Replacement cache: not used" : targets.current().cache().toString();
+    }
+
+    /**
+     * Loads the data once and serves simplification requests over HTTP until the process is stopped, see
+     * {@link SimplificationServer}. The server only listens on the loopback address.
+     *
+     * @param embeddingsFile Path to the embeddings file.
+     * @param google1000File Path to the Google-1000 file.
+     * @param port           The port to listen on.
+     * @throws IOException          If an error occurs during loading or the port can't be used.
+     * @throws InterruptedException If the server thread is interrupted.
+     */
+    private void serve(String embeddingsFile, String google1000File, int port) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        // Targets can be reloaded with POST /targets, unless they are fixed by a precompiled table
+        InetSocketAddress address = new InetSocketAddress("127.0.0.1", port);
+        ReplacementTable table = table(embeddingsFile, google1000File);
+        SimplificationServer server = table != null
+                ? new SimplificationServer(new TextSimplifier(table), address)
+                : new SimplificationServer(load(embeddingsFile, google1000File), address);
+        server.start();
+        System.out.printf("Data loaded in %d ms, listening on http://%s:%d (POST /simplify, GET /metrics, /targets)%n",
+                (System.nanoTime() - start) / 1_000_000, "127.0.0.1", server.address().getPort());
+
+        // Finish the requests in progress on Ctrl+C
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop(5);
+            System.out.println(server.latency().toJson());
+            System.out.println(cacheSummary());
+        }));
+        Thread.currentThread().join();
+    }
+
+    /**
+     * Simplifies every file matching the input directory or glob into the output directory, keeping the relative
+     * paths. The data is loaded once for all files, see {@link BatchSimplifier}.
+     *
+     * @param embeddingsFile Path to the embeddings file.
+     * @param google1000File Path to the Google-1000 file.
+     * @param inputs         An input directory or glob pattern.
+     * @param outputDir      The directory for the simplified files.
+     * @throws IOException If an error occurs during loading or the output directory can't be created.
+     */
+    private void batch(String embeddingsFile, String google1000File, String inputs, String outputDir) throws IOException {
+        BatchSimplifier.Inputs files = BatchSimplifier.findInputs(inputs, Path.of(outputDir));
+        if (files.files().isEmpty()) {
+            System.out.println("No input files match " + inputs);
+            return;
+        }
+
+        BatchSimplifier batch = new BatchSimplifier(simplifier(embeddingsFile, google1000File),
+                Integer.getInteger("simplifier.batch.files", Runtime.getRuntime().availableProcessors()));
+        System.out.println(batch.run(files, Path.of(outputDir)));
+        System.out.println(cacheSummary());
+    }
+
+    /**
+     * Loads the embeddings and Google-1000 words and writes a replacement table for them, see
+     * {@link ReplacementTable}.
+     *
+     * @param embeddingsFile Path to the embeddings file.
+     * @param google1000File Path to the Google-1000 file.
+     * @param tableFile      Path for the table file.
+     * @throws IOException If an error occurs during loading or writing.
+     */
+    private void compileTable(String embeddingsFile, String google1000File, String tableFile) throws IOException {
+        DataLoadingManager dataManager = new DataLoadingManager();
+        dataManager.loadWordEmbeddings(embeddingsFile);
+        dataManager.loadGoogle1000Words(google1000File);
+
+        long checksum = ReplacementTable.checksum(embeddingsFile, google1000File);
+        if (!"sharded".equalsIgnoreCase(System.getProperty("simplifier.search"))) {
+            ReplacementTable.compile(dataManager, checksum, tableFile);
+            return;
+        }
+        try (ShardedSearch search = shards(dataManager.googleIndex)) {
+            ReplacementTable.compile(dataManager, checksum, tableFile, search);
+        }
+    }
+
+    /**
+     * Picks the nearest-neighbour search for the Google-1000 index. The exact search is the default. With
+     * -Dsimplifier.search=hnsw the approximate {@link HnswIndex} is used instead. The graph is saved next to the
+     * embeddings file and reused as long as it was built for the same index. With -Dsimplifier.search=int8 the
+     * {@link QuantizedSearch} is used, re-ranking the best -Dsimplifier.rerank candidates exactly. With
+     * -Dsimplifier.search=pca or random the {@link ProjectedSearch} shortlists -Dsimplifier.projection.shortlist
+     * candidates in -Dsimplifier.projection.dims dimensions and scores them exactly. With -Dsimplifier.search=pruned
+     * the exact {@link PrunedSearch} is used, which abandons candidates that can't win. With
+     * -Dsimplifier.search=sharded the exact search is split over {@link ShardWorker} processes, see
+     * {@link #shards(VocabularyIndex)}.
+     *
+     * @param embeddingsFile Path to the embeddings file.
+     * @param index          The Google-1000 index.
+     * @return The search to use.
+     * @throws IOException If a saved graph can't be read or written.
+     */
+    private static NearestNeighbourSearch search(String embeddingsFile, VocabularyIndex index) throws IOException {
+        String mode = System.getProperty("simplifier.search", "exact");
+        if ("int8".equalsIgnoreCase(mode)) {
+            return new QuantizedSearch(index, Integer.getInteger("simplifier.rerank", 8));
+        }
+        if ("pruned".equalsIgnoreCase(mode)) {
+            return new PrunedSearch(index);
+        }
+        if ("sharded".equalsIgnoreCase(mode)) {
+            return shards(index);
+        }
+        if ("pca".equalsIgnoreCase(mode) || "random".equalsIgnoreCase(mode)) {
+            int dims = Integer.getInteger("simplifier.projection.dims", 32);
+            int shortlist = Integer.getInteger("simplifier.projection.shortlist", 16);
+            return "pca".equalsIgnoreCase(mode)
+                    ? ProjectedSearch.pca(index, dims, shortlist)
+                    : ProjectedSearch.random(index, dims, shortlist, 42);
+        }
+        if ("hnsw".equalsIgnoreCase(mode)) {
+            return hnsw(embeddingsFile, index);
+        }
+        return NearestNeighbourSearch.exact(index);
+    }
+
+    /**
+     * Loads the {@link HnswIndex} saved next to the embeddings file, or builds and saves it if there is none for this
+     * index, with the -Dsimplifier.hnsw.* settings.
+     *
+     * @param embeddingsFile Path to the embeddings file.
+     * @param index          The Google-1000 index.
+     * @return The graph.
+     * @throws IOException If the saved graph can't be read or written.
+     */
+    private static HnswIndex hnsw(String embeddingsFile, VocabularyIndex index) throws IOException {
+        int efSearch = Integer.getInteger("simplifier.hnsw.efSearch", 64);
+        String graphFile = embeddingsFile + ".hnsw";
+        HnswIndex graph = HnswIndex.load(graphFile, index);
+        if (graph == null) {
+            long start = System.nanoTime();
+            graph = HnswIndex.build(index, Integer.getInteger("simplifier.hnsw.m", 16),
+                    Integer.getInteger("simplifier.hnsw.efConstruction", 200), efSearch);
+            graph.save(graphFile);
+            System.out.printf("HNSW index built in %d ms and saved to %s%n",
+                    (System.nanoTime() - start) / 1_000_000, graphFile);
+        }
+        graph.setEfSearch(efSearch);
+        return graph;
+    }
+
+    /**
+     * Connects a {@link ShardedSearch} to the workers in -Dsimplifier.shards. "local:N" (the default is local:2)
+     * starts N workers on this machine the first time and reuses them after, otherwise the value is a comma separated
+     * list of host:port addresses of workers started with the worker mode.
+     *
+     * @param index The Google-1000 index.
+     * @return The search.
+     * @throws IOException If a worker can't be started or reached.
+     */
+    private static ShardedSearch shards(VocabularyIndex index) throws IOException {
+        String shards = System.getProperty("simplifier.shards", "local:2");
+        List<InetSocketAddress> workers = new ArrayList<>();
+        if (shards.startsWith("local:")) {
+            int count = Integer.parseInt(shards.substring("local:".length()));
+            synchronized (Runner.class) {
+                if (localWorkers == null || localWorkers.size() != count) {
+                    localWorkers = ShardWorker.startLocal(count);
+                }
+                workers.addAll(localWorkers);
+            }
+        } else {
+            for (String address : shards.split(",")) {
+                workers.add(ShardWorker.parseAddress(address.trim()));
+            }
+        }
+        // The platform pool can't add a thread while one waits on the workers, see ExecutionModel
+        if (ExecutionModel.describe().startsWith("platform")) {
+            System.out.println("Warning: with -Dsimplifier.compute=platform the compute threads wait on the shard"
+                    + " workers, use forkjoin or virtual");
+        }
+        return ShardedSearch.connect(index, workers);
+    }
+
+    /**
+     * Prints how often the HNSW search finds the same word as the exact search, and how much faster it is, for a
+     * range of efSearch values. The queries are spread evenly over the embeddings vocabulary.
+     *
+     * @param embeddingsFile Path to the embeddings file.
+     * @param google1000File Path to the target word list.
+     * @param queries        The number of words to test with.
+     * @throws IOException If an error occurs during loading.
+     */
+    private void hnswReport(String embeddingsFile, String google1000File, int queries) throws IOException {
+        DataLoadingManager dataManager = new DataLoadingManager();
+        dataManager.loadWordEmbeddings(embeddingsFile);
+        dataManager.loadGoogle1000Words(google1000File);
+        VocabularyIndex index = dataManager.googleIndex;
+
+        HnswIndex graph = hnsw(embeddingsFile, index);
+        List<float[]> sample = sampleQueries(dataManager, queries);
+
+        NearestNeighbourSearch exact = NearestNeighbourSearch.exact(index);
+        for (int efSearch : new int[]{16, 32, 64, 128, 256}) {
+            graph.setEfSearch(efSearch);
+            System.out.println(graph.recallReport(exact, sample));
+        }
+    }
+
+    /**
+     * Prints how often the projected search finds the same word as the exact search, and how much faster it is, for
+     * PCA and random bases of 32 to 64 dimensions and a few shortlist sizes. The queries are spread evenly over the
+     * embeddings vocabulary.
+     *
+     * @param embeddingsFile Path to the embeddings file.
+     * @param google1000File Path to the target word list.
+     * @param queries        The number of words to test with.
+     * @throws IOException If an error occurs during loading.
+     */
+    private void prefilterReport(String embeddingsFile, String google1000File, int queries) throws IOException {
+        DataLoadingManager dataManager = new DataLoadingManager();
+        dataManager.loadWordEmbeddings(embeddingsFile);
+        dataManager.loadGoogle1000Words(google1000File);
+        VocabularyIndex index = dataManager.googleIndex;
+        List<float[]> sample = sampleQueries(dataManager, queries);
+
+        NearestNeighbourSearch exact = NearestNeighbourSearch.exact(index);
+        for (int dims : new int[]{32, 48, 64}) {
+            long start = System.nanoTime();
+            ProjectedSearch pca = ProjectedSearch.pca(index, dims, 1);
+            System.out.printf("PCA basis of %d dimensions built in %d ms%n", dims, (System.nanoTime() - start) / 1_000_000);
+            for (int shortlist : new int[]{4, 8, 16, 32}) {
+                System.out.println(pca.withShortlist(shortlist).report("pca", exact, sample));
+            }
+            System.out.println(ProjectedSearch.random(index, dims, 16, 42).report("random", exact, sample));
+        }
+    }
+
+    /**
+     * Prints how often the pruned search finds the same word as the exact search (always, unless there is a bug),
+     * how many multiply-adds it skips and how much faster it is. The queries are spread evenly over the embeddings
+     * vocabulary.
+     *
+     * @param embeddingsFile Path to the embeddings file.
+     * @param google1000File Path to the target word list.
+     * @param queries        The number of words to test with.
+     * @throws IOException If an error occurs during loading.
+     */
+    private void pruningReport(String embeddingsFile, String google1000File, int queries) throws IOException {
+        DataLoadingManager dataManager = new DataLoadingManager();
+        dataManager.loadWordEmbeddings(embeddingsFile);
+        dataManager.loadGoogle1000Words(google1000File);
+        VocabularyIndex index = dataManager.googleIndex;
+
+        long start = System.nanoTime();
+        PrunedSearch pruned = new PrunedSearch(index);
+        System.out.printf("Clusters and block norms built in %d ms%n", (System.nanoTime() - start) / 1_000_000);
+        System.out.println(pruned.report(NearestNeighbourSearch.exact(index), sampleQueries(dataManager, queries)));
+    }
+
+    // Normalized vectors of words spread evenly over the embeddings vocabulary
+    private static List<float[]> sampleQueries(DataLoadingManager dataManager, int queries) {
+        String[] words = dataManager.wordEmbeddings.words();
+        Arrays.sort(words);
+        List<float[]> sample = new ArrayList<>();
+        int step = Math.max(1, words.length / Math.max(1, queries));
+        for (int i = 0; i < words.length && sample.size() < queries; i += step) {
+            sample.add(dataManager.googleIndex.normalize(dataManager.wordEmbeddings.get(words[i])));
+        }
+        return sample;
+    }
+
+    /**
+     * Prints how much memory the quantized formats save and how often they pick the same word as the full precision
+     * doubles with the exact search. The queries are spread evenly over the embeddings vocabulary.
+     *
+     * @param embeddingsFile Path to the text embeddings file.
+     * @param google1000File Path to the target word list.
+     * @param queries        The number of words to test with.
+     * @throws IOException If an error occurs during loading.
+     */
+    private void quantizeReport(String embeddingsFile, String google1000File, int queries) throws IOException {
+        Map<String, double[]> parsed = new TextEmbeddingsParser().parse(embeddingsFile);
+        String[] words = parsed.keySet().toArray(new String[0]);
+        Arrays.sort(words);
+        List<String> sample = new ArrayList<>();
+        int step = Math.max(1, words.length / Math.max(1, queries));
+        for (int i = 0; i < words.length && sample.size() < queries; i += step) {
+            sample.add(words[i]);
+        }
+
+        // The reference answers
+        DataLoadingManager full = new DataLoadingManager();
+        PackedEmbeddingStore packed = PackedEmbeddingStore.pack(parsed);
+        full.wordEmbeddings = packed;
+        full.loadGoogle1000Words(google1000File);
+        WordResolver reference = new SimilarityResolver(full.wordEmbeddings, full.googleIndex);
+        String[] expected = new String[sample.size()];
+        long nanos = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            // The first pass warms up the JIT, the second is timed
+            nanos = System.nanoTime();
+            for (int i = 0; i < expected.length; i++) {
+                expected[i] = reference.resolve(sample.get(i));
+            }
+            nanos = System.nanoTime() - nanos;
+        }
+        System.out.println(agreementLine("double  exact", packed.vectorBytes(), expected.length, expected.length, nanos));
+
+        for (QuantizedEmbeddingStore.Encoding encoding : QuantizedEmbeddingStore.Encoding.values()) {
+            DataLoadingManager quantized = new DataLoadingManager();
+            QuantizedEmbeddingStore store = QuantizedEmbeddingStore.quantize(parsed, encoding);
+            quantized.wordEmbeddings = store;
+            quantized.loadGoogle1000Words(google1000File);
+            VocabularyIndex index = quantized.googleIndex;
+
+            List<String> names = new ArrayList<>(List.of("exact"));
+            List<NearestNeighbourSearch> searches = new ArrayList<>(List.of(NearestNeighbourSearch.exact(index)));
+            if (encoding == QuantizedEmbeddingStore.Encoding.INT8) {
+                for (int rerank : new int[]{1, 4, 8}) {
+                    names.add("int8 rerank=" + rerank);
+                    searches.add(new QuantizedSearch(index, rerank));
+                }
+            }
+
+            for (int s = 0; s < searches.size(); s++) {
+                WordResolver resolver = new SimilarityResolver(store, index, searches.get(s));
+                int agree = 0;
+                for (int pass = 0; pass < 2; pass++) {
+                    agree = 0;
+                    nanos = System.nanoTime();
+                    for (int i = 0; i < expected.length; i++) {
+                        if (Objects.equals(expected[i], resolver.resolve(sample.get(i)))) {
+                            agree++;
+                        }
+                    }
+                    nanos = System.nanoTime() - nanos;
+                }
+                System.out.println(agreementLine(encoding.name().toLowerCase() + " " + names.get(s),
+                        store.vectorBytes(), agree, expected.length, nanos));
+            }
+        }
+    }
+
+    // One line of the quantization report
+    private static String agreementLine(String name, long bytes, int agree, int total, long nanos) {
+        return String.format("%-26s vectors %8.1f MB | agreement %6.2f%% (%d/%d) | %7.2f us/word", name,
+                bytes / (1024.0 * 1024.0), 100.0 * agree / Math.max(1, total), agree, total,
+                nanos / 1000.0 / Math.max(1, total));
+    }
+
     /*
      *  Terminal Progress Meter
      *  -----------------------
@@ -199,4 +751,20 @@ public class Runner {
         //Once the meter reaches its max, move to a new line.
         if (done == total) System.out.println("\n");
     }
+
+    /**
+     * The progress meter for a job measured in bytes, followed by the estimated time left.
+     *
+     * @param done     Bytes done.
+     * @param total    Bytes in total.
+     * @param etaNanos Estimated time left, negative if not known yet.
+     */
+    public static void printProgress(long done, long total, long etaNanos) {
+        if (total <= 0) return;
+        int complete = (int) Math.min(100, 100 * done / total);
+        printProgress(complete, 100);
+        long seconds = Math.max(0, etaNanos) / 1_000_000_000L;
+        System.out.print(etaNanos < 0 || complete == 100 ? "          "
+                : String.format(" ETA %d:%02d   ", seconds / 60, seconds % 60));
+    }
 }
\ No newline at end of file
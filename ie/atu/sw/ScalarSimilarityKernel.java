@@ -0,0 +1,44 @@
+package ie.atu.sw;
+
+/**
+ * Plain Java similarity kernel. This is always available and is used when the Vector API module is not enabled.
+ */
+public class ScalarSimilarityKernel implements SimilarityKernel {
+    @Override
+    public float dot(float[] query, float[] matrix, int offset) {
+        // Four accumulators break the dependency chain between additions
+        float sum0 = 0f, sum1 = 0f, sum2 = 0f, sum3 = 0f;
+        int length = query.length;
+        int i = 0;
+        for (; i + 3 < length; i += 4) {
+            sum0 += query[i] * matrix[offset + i];
+            sum1 += query[i + 1] * matrix[offset + i + 1];
+            sum2 += query[i + 2] * matrix[offset + i + 2];
+            sum3 += query[i + 3] * matrix[offset + i + 3];
+        }
+
+        // Leftover components
+        for (; i < length; i++) {
+            sum0 += query[i] * matrix[offset + i];
+        }
+        return (sum0 + sum1) + (sum2 + sum3);
+    }
+
+    @Override
+    public float dot(float[] query, int from, int to, float[] matrix, int offset) {
+        float sum0 = 0f, sum1 = 0f, sum2 = 0f, sum3 = 0f;
+        int i = from;
+        for (; i + 3 < to; i += 4) {
+            sum0 += query[i] * matrix[offset + i];
+            sum1 += query[i + 1] * matrix[offset + i + 1];
+            sum2 += query[i + 2] * matrix[offset + i + 2];
+            sum3 += query[i + 3] * matrix[offset + i + 3];
+        }
+
+        // Leftover components
+        for (; i < to; i++) {
+            sum0 += query[i] * matrix[offset + i];
+        }
+        return (sum0 + sum1) + (sum2 + sum3);
+    }
+}
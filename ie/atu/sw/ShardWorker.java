@@ -0,0 +1,233 @@
+package ie.atu.sw;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A worker process that holds one shard of the Google-1000 vectors and finds the best row of its shard for batches
+ * of query vectors, see {@link ShardedSearch}.
+ *
+ * <p>The worker needs no files: the coordinator sends the shard when it connects. Every connection gets its own
+ * shard and is served in its own virtual thread, and the queries of a batch are spread over the compute pool.</p>
+ *
+ * <p>Protocol (big-endian, over a plain TCP socket):</p>
+ * <pre>
+ *   coordinator: int MAGIC, int VERSION, UTF kernel, int firstRow, int rows, int dimensions, rows * dimensions floats
+ *   worker:      int MAGIC, UTF kernel, byte accepted (1) or refused (0, different kernel)
+ *   coordinator: byte SEARCH, int count, count * dimensions floats    (repeated)
+ *   worker:      count * (int row, float score), row is -1 for an empty shard
+ *   coordinator: byte CLOSE
+ * </pre>
+ *
+ * <p>A shard may hold at most {@link #MAX_SHARD_FLOATS} floats of up to {@link #MAX_DIMENSIONS} dimensions, and a
+ * batch at most {@link #MAX_BATCH} queries. Larger sizes are refused, and the connection is closed, before anything
+ * is allocated for them.</p>
+ *
+ * <p>Both sides must use the same {@link SimilarityKernel} so the scores, and the merged answer, are exactly the
+ * same as in a single process.</p>
+ */
+public class ShardWorker {
+    static final int MAGIC = 0x53485244; // "SHRD"
+    static final int VERSION = 1;
+    static final byte CLOSE = 0;
+    static final byte SEARCH = 1;
+
+    // Largest batch in one message
+    static final int MAX_BATCH = 4096;
+
+    // Longest vector, and most floats in a shard (the bytes must fit in one array)
+    static final int MAX_DIMENSIONS = 1 << 16;
+    static final int MAX_SHARD_FLOATS = Integer.MAX_VALUE / Float.BYTES;
+
+    private final ServerSocket server;
+    private final SimilarityKernel kernel = SimilarityKernel.select();
+
+    /**
+     * Binds the worker, call {@link #serve()} to accept coordinators.
+     *
+     * @param address The address to listen on, port 0 picks a free port.
+     * @throws IOException If the address can't be bound.
+     */
+    public ShardWorker(InetSocketAddress address) throws IOException {
+        this.server = new ServerSocket();
+        server.bind(address);
+    }
+
+    public InetSocketAddress address() {
+        return (InetSocketAddress) server.getLocalSocketAddress();
+    }
+
+    /**
+     * Accepts coordinators until the process is stopped.
+     *
+     * @throws IOException If the server socket fails.
+     */
+    public void serve() throws IOException {
+        System.out.println("Shard worker listening on " + address().getHostString() + ":" + address().getPort()
+                + " (" + kernel.name() + ")");
+        while (true) {
+            Socket socket = server.accept();
+            Thread.ofVirtual().start(() -> {
+                try (socket) {
+                    handle(socket);
+                } catch (IOException e) {
+                    System.out.println("Shard connection closed: " + e.getMessage());
+                }
+            });
+        }
+    }
+
+    private void handle(Socket socket) throws IOException {
+        socket.setTcpNoDelay(true);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+        // The shard
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Not a shard coordinator");
+        }
+        String coordinatorKernel = in.readUTF();
+        int firstRow = in.readInt();
+        int rows = in.readInt();
+        int dimensions = in.readInt();
+        if (firstRow < 0 || rows < 0 || dimensions < 1 || dimensions > MAX_DIMENSIONS
+                || (long) rows * dimensions > MAX_SHARD_FLOATS) {
+            throw new IOException("Shard of " + rows + " rows of " + dimensions + " dimensions from row " + firstRow
+                    + " refused");
+        }
+        float[] matrix = readFloats(in, rows * dimensions);
+
+        boolean accepted = kernel.name().equals(coordinatorKernel);
+        out.writeInt(MAGIC);
+        out.writeUTF(kernel.name());
+        out.writeByte(accepted ? 1 : 0);
+        out.flush();
+        if (!accepted) {
+            return;
+        }
+        System.out.println("Shard of " + rows + " rows from row " + firstRow + " loaded");
+
+        // Batches until the coordinator closes
+        while (true) {
+            int command = in.read();
+            if (command < 0 || command == CLOSE) {
+                return;
+            }
+            if (command != SEARCH) {
+                throw new IOException("Unknown command " + command);
+            }
+
+            int count = in.readInt();
+            if (count < 1 || count > MAX_BATCH) {
+                throw new IOException("Batch of " + count + " queries refused, the limit is " + MAX_BATCH);
+            }
+            float[][] queries = new float[count][];
+            for (int i = 0; i < count; i++) {
+                queries[i] = readFloats(in, dimensions);
+            }
+
+            // Best local row and its score for every query, ties go to the lower row like the exact search
+            int[] best = new int[count];
+            float[] scores = new float[count];
+            ExecutionModel.forEach(count, i -> {
+                int row = kernel.argmax(queries[i], matrix, rows, dimensions);
+                best[i] = row < 0 ? -1 : firstRow + row;
+                scores[i] = row < 0 ? Float.NEGATIVE_INFINITY : kernel.dot(queries[i], matrix, row * dimensions);
+            });
+
+            ByteBuffer reply = ByteBuffer.allocate(count * (Integer.BYTES + Float.BYTES));
+            for (int i = 0; i < count; i++) {
+                reply.putInt(best[i]).putFloat(scores[i]);
+            }
+            out.write(reply.array());
+            out.flush();
+        }
+    }
+
+    /**
+     * Starts worker processes on this machine, with the same Java, class path and module options as this process.
+     * They are stopped when this process exits.
+     *
+     * @param count The number of workers.
+     * @return The address of every worker.
+     * @throws IOException If a worker can't be started.
+     */
+    public static List<InetSocketAddress> startLocal(int count) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        for (String argument : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (argument.startsWith("--add-modules") || argument.startsWith("--enable-preview")) {
+                command.add(argument);
+            }
+        }
+        command.addAll(List.of("-cp", System.getProperty("java.class.path"), Runner.class.getName(), "worker", "0"));
+
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            Runtime.getRuntime().addShutdownHook(new Thread(process::destroy));
+
+            // The first line gives the port, the rest is read and dropped so the worker never blocks on output
+            BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream()));
+            String line = output.readLine();
+            if (line == null || !line.startsWith("Shard worker listening on ")) {
+                process.destroy();
+                throw new IOException("Shard worker didn't start: " + line);
+            }
+            String address = line.substring("Shard worker listening on ".length()).split(" ")[0];
+            addresses.add(parseAddress(address));
+            Thread.ofVirtual().start(() -> {
+                try {
+                    while (output.readLine() != null) {
+                        // Dropped
+                    }
+                } catch (IOException ignored) {
+                    // Worker stopped
+                }
+            });
+        }
+        return addresses;
+    }
+
+    // host:port
+    static InetSocketAddress parseAddress(String address) throws IOException {
+        int colon = address.lastIndexOf(':');
+        if (colon < 0) {
+            throw new IOException("Expected host:port, got " + address);
+        }
+        return new InetSocketAddress(InetAddress.getByName(address.substring(0, colon)),
+                Integer.parseInt(address.substring(colon + 1)));
+    }
+
+    static float[] readFloats(DataInputStream in, int count) throws IOException {
+        byte[] bytes = new byte[count * Float.BYTES];
+        try {
+            in.readFully(bytes);
+        } catch (EOFException e) {
+            throw new IOException("Connection closed in the middle of a message", e);
+        }
+        float[] values = new float[count];
+        ByteBuffer.wrap(bytes).asFloatBuffer().get(values);
+        return values;
+    }
+
+    static void writeFloats(DataOutputStream out, float[] values, int offset, int count) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(count * Float.BYTES);
+        bytes.asFloatBuffer().put(values, offset, count);
+        out.write(bytes.array());
+    }
+}
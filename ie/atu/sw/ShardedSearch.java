@@ -0,0 +1,331 @@
+package ie.atu.sw;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Exact search with the Google-1000 rows split over {@link ShardWorker} processes.
+ *
+ * <p>Every worker gets a contiguous range of rows and returns its best row and score for each query. The coordinator
+ * keeps the highest score, and on a tie the row of the earlier shard, which is the lower row. As long as both sides
+ * use the same {@link SimilarityKernel} (checked when connecting), this is the same answer as the single process
+ * exact search.</p>
+ *
+ * <p>Every worker is sent its batch and read from on its own virtual thread, so the workers search at the same time.
+ * Each connection has its own lock, held for one batch (request and reply), so batches from different threads only
+ * take turns on a worker, not on the whole search: while one batch waits on a worker, another can use the others.</p>
+ *
+ * <p>An exchange is never interrupted, as an interrupt closes the socket of a virtual thread blocked on it. If one
+ * worker fails, the others finish the batch they are on and stop. A connection that fails part way through an
+ * exchange can't be trusted to be in step any more, so it is closed, and the next batch for that shard connects again
+ * and sends the rows again.</p>
+ */
+public class ShardedSearch implements NearestNeighbourSearch, Closeable {
+    // Metrics
+    private static final Metrics.Counter BATCHES = Metrics.counter("shards.batches");
+    private static final Metrics.Counter QUERIES = Metrics.counter("shards.queries");
+    private static final Metrics.Counter RECONNECTS = Metrics.counter("shards.reconnects");
+    private static final LatencyHistogram ROUND_TRIP = Metrics.timer("shards.roundTrip");
+
+    // Longest wait for a worker to connect or answer, so a worker that is gone can't hold a shard forever
+    private static final int TIMEOUT_MILLIS = 60_000;
+
+    private final VocabularyIndex index;
+    private final String kernel = SimilarityKernel.select().name();
+    private final Shard[] shards;
+    private volatile boolean closed;
+
+    // Talks to the workers at the same time
+    private final ExecutorService io = ExecutionModel.newIoExecutor();
+
+    /**
+     * One worker and its range of rows. The connection is only used with the lock held, for one exchange at a time (a
+     * lock rather than synchronized so virtual threads aren't pinned), and is null while there is no usable one.
+     */
+    private static final class Shard {
+        final InetSocketAddress address;
+        final int from;
+        final int to;
+        final ReentrantLock lock = new ReentrantLock();
+        Socket socket;
+        DataInputStream in;
+        DataOutputStream out;
+
+        Shard(InetSocketAddress address, int from, int to) {
+            this.address = address;
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    // The best row of one shard and its score for every query
+    private record Answers(int[] rows, float[] scores) {
+    }
+
+    private ShardedSearch(VocabularyIndex index, List<InetSocketAddress> workers) {
+        this.index = index;
+        this.shards = new Shard[workers.size()];
+        for (int s = 0; s < shards.length; s++) {
+            int from = (int) ((long) index.size() * s / shards.length);
+            int to = (int) ((long) index.size() * (s + 1) / shards.length);
+            shards[s] = new Shard(workers.get(s), from, to);
+        }
+    }
+
+    /**
+     * Connects to the workers and sends each one its share of the index.
+     *
+     * <p><b>Big-O Notation is O(n * m)</b> -> n = Number of words in the index and m = Length of each vector, every
+     * component is sent once.</p>
+     *
+     * @param index   The Google-1000 index.
+     * @param workers The worker addresses, one shard each.
+     * @return The search.
+     * @throws IOException If a worker can't be reached or uses a different kernel.
+     */
+    public static ShardedSearch connect(VocabularyIndex index, List<InetSocketAddress> workers) throws IOException {
+        if (workers.isEmpty()) {
+            throw new IOException("No shard workers given");
+        }
+
+        ShardedSearch search = new ShardedSearch(index, workers);
+        try {
+            for (Shard shard : search.shards) {
+                shard.lock.lock();
+                try {
+                    search.open(shard);
+                } finally {
+                    shard.lock.unlock();
+                }
+            }
+        } catch (IOException e) {
+            search.close();
+            throw e;
+        }
+        System.out.println("Connected to " + workers.size() + " shard workers");
+        return search;
+    }
+
+    /**
+     * Connects to the worker of a shard and sends it the rows. Called with the shard's lock held.
+     *
+     * @param shard The shard.
+     * @throws IOException If the worker can't be reached or uses a different kernel.
+     */
+    private void open(Shard shard) throws IOException {
+        int dimensions = index.dimensions;
+        Socket socket = new Socket();
+        try {
+            socket.connect(shard.address, TIMEOUT_MILLIS);
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(TIMEOUT_MILLIS);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+
+            out.writeInt(ShardWorker.MAGIC);
+            out.writeInt(ShardWorker.VERSION);
+            out.writeUTF(kernel);
+            out.writeInt(shard.from);
+            out.writeInt(shard.to - shard.from);
+            out.writeInt(dimensions);
+            ShardWorker.writeFloats(out, index.matrix, shard.from * dimensions, (shard.to - shard.from) * dimensions);
+            out.flush();
+
+            if (in.readInt() != ShardWorker.MAGIC) {
+                throw new IOException("Not a shard worker: " + shard.address);
+            }
+            String workerKernel = in.readUTF();
+            if (in.readByte() != 1) {
+                throw new IOException("Shard worker " + shard.address + " uses " + workerKernel + ", not "
+                        + kernel + " (start both with the same --add-modules options)");
+            }
+            shard.socket = socket;
+            shard.in = in;
+            shard.out = out;
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    // Closes the connection of a shard, the next batch connects again. Called with the shard's lock held.
+    private static void drop(Shard shard) {
+        try {
+            if (shard.socket != null) {
+                shard.socket.close();
+            }
+        } catch (IOException ignored) {
+            // Already gone
+        }
+        shard.socket = null;
+        shard.in = null;
+        shard.out = null;
+    }
+
+    @Override
+    public int nearest(float[] query) {
+        return nearestAll(new float[][]{query})[0];
+    }
+
+    /**
+     * Sends the queries to every worker and merges the answers.
+     *
+     * <p><b>Big-O Notation is O(q * n * m / s)</b> -> q = Number of queries, n = Number of words in the index,
+     * m = Length of each vector and s = Number of workers, plus the network time.</p>
+     *
+     * @param queries Normalized query vectors.
+     * @return The best row for each query.
+     * @throws UncheckedIOException If a worker fails.
+     */
+    @Override
+    public int[] nearestAll(float[][] queries) {
+        int[] best = new int[queries.length];
+        float[] bestScores = new float[queries.length];
+        Arrays.fill(best, -1);
+        Arrays.fill(bestScores, Float.NEGATIVE_INFINITY);
+        if (queries.length == 0) {
+            return best;
+        }
+
+        // Every worker on its own thread, stopping after its current batch once another one has failed
+        AtomicBoolean failed = new AtomicBoolean();
+        List<Future<Answers>> futures = new ArrayList<>(shards.length);
+        for (Shard shard : shards) {
+            futures.add(io.submit(() -> search(shard, queries, failed)));
+        }
+
+        // The futures are never cancelled, see the class comment. Called from a compute task, the wait lets the pool
+        // start another thread, see ExecutionModel
+        try {
+            // Shards are in row order, so keeping the earlier one on a tie keeps the lower row
+            for (Future<Answers> future : futures) {
+                Answers answers = ExecutionModel.await(future);
+                for (int i = 0; i < queries.length; i++) {
+                    int row = answers.rows()[i];
+                    float score = answers.scores()[i];
+                    if (row >= 0 && (best[i] < 0 || score > bestScores[i])) {
+                        best[i] = row;
+                        bestScores[i] = score;
+                    }
+                }
+            }
+        } catch (ExecutionException e) {
+            failed.set(true);
+            throw e.getCause() instanceof IOException cause ? new UncheckedIOException("Shard worker failed", cause)
+                    : new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            failed.set(true);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+
+        BATCHES.add((queries.length + ShardWorker.MAX_BATCH - 1) / ShardWorker.MAX_BATCH);
+        QUERIES.add(queries.length);
+        // Every row is scored once per query, on whichever worker holds it
+        Metrics.SIMILARITY_EVALUATIONS.add((long) queries.length * index.size());
+        return best;
+    }
+
+    /**
+     * Sends the queries to one worker in batches of up to {@link ShardWorker#MAX_BATCH} and reads its answers,
+     * holding the connection for one batch at a time. A shard without a connection is connected first.
+     *
+     * @param shard   The worker.
+     * @param queries Normalized query vectors.
+     * @param failed  Set when another shard has failed.
+     * @return The best row of the shard and its score for every query.
+     * @throws IOException If the worker fails, or another one did.
+     */
+    private Answers search(Shard shard, float[][] queries, AtomicBoolean failed) throws IOException {
+        int dimensions = index.dimensions;
+        int[] rows = new int[queries.length];
+        float[] scores = new float[queries.length];
+        for (int start = 0; start < queries.length; start += ShardWorker.MAX_BATCH) {
+            if (failed.get()) {
+                throw new IOException("Stopped, another shard worker failed");
+            }
+            int count = Math.min(ShardWorker.MAX_BATCH, queries.length - start);
+            byte[] reply = new byte[count * (Integer.BYTES + Float.BYTES)];
+
+            shard.lock.lock();
+            try {
+                if (closed) {
+                    throw new IOException("Sharded search closed");
+                }
+                if (shard.socket == null) {
+                    open(shard);
+                    RECONNECTS.increment();
+                }
+
+                // Anything short of a whole exchange leaves the streams out of step
+                boolean complete = false;
+                try {
+                    long began = System.nanoTime();
+                    shard.out.writeByte(ShardWorker.SEARCH);
+                    shard.out.writeInt(count);
+                    for (int i = start; i < start + count; i++) {
+                        ShardWorker.writeFloats(shard.out, queries[i], 0, dimensions);
+                    }
+                    shard.out.flush();
+                    shard.in.readFully(reply);
+                    ROUND_TRIP.record(System.nanoTime() - began);
+                    complete = true;
+                } finally {
+                    if (!complete) {
+                        drop(shard);
+                    }
+                }
+            } finally {
+                shard.lock.unlock();
+            }
+
+            ByteBuffer answers = ByteBuffer.wrap(reply);
+            for (int i = start; i < start + count; i++) {
+                rows[i] = answers.getInt();
+                scores[i] = answers.getFloat();
+            }
+        }
+        return new Answers(rows, scores);
+    }
+
+    // Tells the workers to drop their shards and closes the connections, after the exchanges in progress
+    @Override
+    public void close() {
+        closed = true;
+        io.shutdown();
+        for (Shard shard : shards) {
+            shard.lock.lock();
+            try {
+                if (shard.out != null) {
+                    shard.out.writeByte(ShardWorker.CLOSE);
+                    shard.out.flush();
+                }
+            } catch (IOException ignored) {
+                // Already gone
+            } finally {
+                drop(shard);
+                shard.lock.unlock();
+            }
+        }
+    }
+
+    public int shards() {
+        return shards.length;
+    }
+}
@@ -0,0 +1,122 @@
+package ie.atu.sw;
+
+import java.util.Random;
+
+/**
+ * Common interface for the inner loops of the similarity search.
+ *
+ * <p>Both methods work on the flat unit-vector layout used by {@link VocabularyIndex}, so the cosine similarity of
+ * two rows is their dot product. Use {@link #select()} to get the fastest kernel available at runtime.</p>
+ */
+public interface SimilarityKernel {
+    // Largest difference allowed between the vector and scalar results
+    float TOLERANCE = 1e-4f;
+
+    /**
+     * Calculates the dot product of the query with one row of the matrix.
+     *
+     * @param query  The normalized query vector.
+     * @param matrix The flat row-major matrix.
+     * @param offset The index of the first component of the row.
+     * @return The dot product.
+     */
+    float dot(float[] query, float[] matrix, int offset);
+
+    // Name of the kernel, two kernels with the same name give bit for bit the same results
+    default String name() {
+        return getClass().getSimpleName();
+    }
+
+    /**
+     * Calculates the dot product of components from to to - 1 of the query with the same components of one row.
+     *
+     * @param query  The query vector.
+     * @param from   The first component.
+     * @param to     The end of the range (exclusive).
+     * @param matrix The flat row-major matrix.
+     * @param offset The index of the first component of the row.
+     * @return The partial dot product.
+     */
+    default float dot(float[] query, int from, int to, float[] matrix, int offset) {
+        float sum = 0f;
+        for (int i = from; i < to; i++) {
+            sum += query[i] * matrix[offset + i];
+        }
+        return sum;
+    }
+
+    /**
+     * Finds the row of the matrix with the highest dot product against the query.
+     *
+     * <p><b>Big-O Notation is O(n * m)</b> -> n = Number of rows and m = Length of each vector.</p>
+     *
+     * @param query      The normalized query vector.
+     * @param matrix     The flat row-major matrix.
+     * @param rows       The number of rows in the matrix.
+     * @param dimensions The length of each row.
+     * @return The best row, or -1 if there are no rows.
+     */
+    default int argmax(float[] query, float[] matrix, int rows, int dimensions) {
+        int bestRow = -1;
+        float highestSimilarity = Float.NEGATIVE_INFINITY;
+
+        for (int row = 0, offset = 0; row < rows; row++, offset += dimensions) {
+            float similarity = dot(query, matrix, offset);
+
+            // Update if this row is a better match
+            if (similarity > highestSimilarity) {
+                highestSimilarity = similarity;
+                bestRow = row;
+            }
+        }
+        return bestRow;
+    }
+
+    /**
+     * Picks the kernel to use on this JVM. The Vector API kernel is used when the jdk.incubator.vector module has
+     * been added (--add-modules jdk.incubator.vector) and it agrees with the scalar kernel on a quick self check.
+     * Otherwise the scalar kernel is returned.
+     *
+     * @return The kernel to use.
+     */
+    static SimilarityKernel select() {
+        SimilarityKernel scalar = new ScalarSimilarityKernel();
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return scalar;
+        }
+
+        try {
+            // Loaded by name so the scalar path never touches the incubator classes
+            SimilarityKernel vector = (SimilarityKernel) Class.forName("ie.atu.sw.VectorSimilarityKernel")
+                    .getDeclaredConstructor().newInstance();
+            return agrees(vector, scalar) ? vector : scalar;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return scalar;
+        }
+    }
+
+    /**
+     * Compares two kernels on random unit-sized data.
+     *
+     * @param kernel    The kernel being checked.
+     * @param reference The kernel it should agree with.
+     * @return True if every dot product is within {@link #TOLERANCE}.
+     */
+    static boolean agrees(SimilarityKernel kernel, SimilarityKernel reference) {
+        Random random = new Random(42);
+        int dimensions = 301;
+        float[] query = new float[dimensions];
+        float[] matrix = new float[dimensions * 8];
+
+        float scale = (float) (1 / Math.sqrt(dimensions));
+        for (int i = 0; i < query.length; i++) query[i] = (float) random.nextGaussian() * scale;
+        for (int i = 0; i < matrix.length; i++) matrix[i] = (float) random.nextGaussian() * scale;
+
+        for (int offset = 0; offset < matrix.length; offset += dimensions) {
+            if (Math.abs(kernel.dot(query, matrix, offset) - reference.dot(query, matrix, offset)) > TOLERANCE) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,115 @@
+package ie.atu.sw;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resolves words by looking up their embeddings and searching the Google-1000 index for the most similar word.
+ */
+public class SimilarityResolver implements WordResolver {
+    // References to the embeddings, the search index and the search over it
+    private final EmbeddingStore wordEmbeddings;
+    private final VocabularyIndex googleIndex;
+    private final NearestNeighbourSearch search;
+
+    // Scans the first rows of the index for the cheaper search
+    private final SimilarityKernel kernel = SimilarityKernel.select();
+
+    // Constructor, uses the exact search
+    public SimilarityResolver(EmbeddingStore wordEmbeddings, VocabularyIndex googleIndex) {
+        this(wordEmbeddings, googleIndex, NearestNeighbourSearch.exact(googleIndex));
+    }
+
+    public SimilarityResolver(EmbeddingStore wordEmbeddings, VocabularyIndex googleIndex, NearestNeighbourSearch search) {
+        this.wordEmbeddings = wordEmbeddings;
+        this.googleIndex = googleIndex;
+        this.search = search;
+    }
+
+    /**
+     * Replaces the word with its closest Google-1000 match. Words without embeddings are kept as they are.
+     *
+     * <p><b>Big-O Notation is O(n * m)</b> -> one scan of the index with the exact search, see
+     * {@link CosineSimilarityCalculator#closestWord(double[], VocabularyIndex)}. Less with an approximate search
+     * such as {@link HnswIndex}.</p>
+     *
+     * @param word The word from the input text.
+     * @return The closest Google-1000 word, or the original word.
+     */
+    @Override
+    public String resolve(String word) {
+        double[] embeddings = wordEmbeddings.get(word);
+        if (embeddings == null) {
+            // Keep original
+            return word;
+        }
+        int row = search.nearest(googleIndex.normalize(embeddings));
+        return row < 0 ? null : googleIndex.word(row);
+    }
+
+    /**
+     * Replaces the word with a cheaper answer for a job running out of time. {@link SimplificationJob.Effort#REDUCED}
+     * searches only the first {@link SimplificationJob#REDUCED_TARGETS} rows of the index, which are the most common
+     * Google-1000 words as the list is in order of frequency. {@link SimplificationJob.Effort#CACHED} has nothing to
+     * offer here except keeping words without embeddings.
+     *
+     * <p><b>Big-O Notation is O(r * m)</b> -> r = Number of rows searched and m = Length of each vector.</p>
+     *
+     * @param word   The word from the input text.
+     * @param effort The most work allowed.
+     * @return The replacement, the original word, or null for a word that needs a search with the cached effort.
+     */
+    @Override
+    public String resolveWithin(String word, SimplificationJob.Effort effort) {
+        if (effort == SimplificationJob.Effort.EXACT) {
+            return resolve(word);
+        }
+        double[] embeddings = wordEmbeddings.get(word);
+        if (embeddings == null) {
+            // Keep original
+            return word;
+        }
+        if (effort == SimplificationJob.Effort.CACHED) {
+            return null;
+        }
+
+        int rows = Math.min(googleIndex.size(), SimplificationJob.REDUCED_TARGETS);
+        int row = kernel.argmax(googleIndex.normalize(embeddings), googleIndex.matrix, rows, googleIndex.dimensions);
+        Metrics.SIMILARITY_EVALUATIONS.add(rows);
+        return row < 0 ? null : googleIndex.word(row);
+    }
+
+    /**
+     * Resolves a group of words together with {@link NearestNeighbourSearch#nearestAll(float[][])}. With the exact
+     * search, all the vectors are compared against the index in one blocked batch (see
+     * {@link ExactSearch#topK(float[][], int)}) instead of one scan per word.
+     *
+     * @param words The words, without duplicates.
+     * @return A map of every word to its replacement.
+     */
+    @Override
+    public Map<String, String> resolveAll(Collection<String> words) {
+        Map<String, String> replacements = new HashMap<>();
+        List<String> found = new ArrayList<>();
+        List<float[]> queries = new ArrayList<>();
+        for (String word : words) {
+            double[] embeddings = wordEmbeddings.get(word);
+            if (embeddings == null) {
+                // Keep original
+                replacements.put(word, word);
+            } else {
+                found.add(word);
+                queries.add(googleIndex.normalize(embeddings));
+            }
+        }
+
+        int[] rows = search.nearestAll(queries.toArray(new float[0][]));
+        for (int i = 0; i < rows.length; i++) {
+            replacements.put(found.get(i), rows[i] < 0 ? null : googleIndex.word(rows[i]));
+        }
+        return replacements;
+    }
+}
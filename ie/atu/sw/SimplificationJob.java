@@ -0,0 +1,214 @@
+package ie.atu.sw;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One run of the simplifier over a file or a request, with an optional time budget and a way to cancel it.
+ *
+ * <p>While there is plenty of time every word gets the exact answer. When the budget is at risk (the estimated time
+ * left is more than the time left before the deadline, or half the budget is gone when there is no estimate yet),
+ * words that need a search get a cheaper one: only the first {@link #REDUCED_TARGETS} Google-1000 words, which are
+ * the most common ones, are searched. Once the deadline has passed only answers already known (cached, or from a
+ * table) are used and the other words are kept as they are. Words that got a cheaper answer are counted as degraded
+ * and reported by {@link #summary()}; they are never cached, so later jobs still get the exact answer.</p>
+ *
+ * <p>{@link #cancel()} stops the job: the simplifier throws a {@link CancellationException} the next time it checks,
+ * which is at least once per chunk and before every search.</p>
+ */
+public final class SimplificationJob {
+    // Google-1000 words searched by the cheaper search
+    public static final int REDUCED_TARGETS = Integer.getInteger("simplifier.deadline.targets", 250);
+
+    // Degraded words listed by the summary
+    private static final int REPORTED_WORDS = 20;
+
+    // Metrics
+    private static final Metrics.Counter REDUCED = Metrics.counter("simplify.degradedReduced");
+    private static final Metrics.Counter PASSED_THROUGH = Metrics.counter("simplify.degradedPassthrough");
+    private static final Metrics.Counter CANCELLED = Metrics.counter("simplify.cancelled");
+
+    /**
+     * How much work a word may get.
+     */
+    public enum Effort {
+        // The normal search
+        EXACT,
+        // A search over the most common targets only
+        REDUCED,
+        // Only answers that are already known, the other words are kept
+        CACHED
+    }
+
+    /**
+     * Told about the progress of a job, from the thread writing the output.
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+        void progress(long done, long total, long etaNanos);
+    }
+
+    private final long started = System.nanoTime();
+    private final long budget;
+    private volatile boolean cancelled;
+
+    // Progress, in bytes for files and chars for text held in memory
+    private volatile long done;
+    private volatile long total;
+    private volatile ProgressListener listener;
+
+    // Degraded tokens, and the degraded words with how they were answered
+    private final LongAdder reduced = new LongAdder();
+    private final LongAdder passedThrough = new LongAdder();
+    private final Map<String, Effort> degradedWords = new ConcurrentHashMap<>();
+
+    private SimplificationJob(long budget) {
+        this.budget = Math.max(0, budget);
+    }
+
+    // A job that always gets exact answers
+    public static SimplificationJob unlimited() {
+        return new SimplificationJob(0);
+    }
+
+    /**
+     * A job that has to finish within the budget, counted from now.
+     *
+     * @param budget The time budget, zero for none.
+     * @return The job.
+     */
+    public static SimplificationJob withBudget(Duration budget) {
+        return new SimplificationJob(budget.toNanos());
+    }
+
+    // A job with the budget of -Dsimplifier.deadline (milliseconds), unlimited if not set
+    public static SimplificationJob fromProperties() {
+        return withBudget(Duration.ofMillis(Long.getLong("simplifier.deadline", 0)));
+    }
+
+    public SimplificationJob onProgress(ProgressListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    // Stops the job at its next check
+    public void cancel() {
+        if (!cancelled) {
+            cancelled = true;
+            CANCELLED.increment();
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Throws if the job was cancelled.
+     *
+     * @throws CancellationException If {@link #cancel()} was called.
+     */
+    public void checkCancelled() {
+        if (cancelled) {
+            throw new CancellationException("Simplification cancelled");
+        }
+    }
+
+    /**
+     * The effort the next word may get, from the time left and the progress so far.
+     *
+     * <p><b>Big-O Notation is O(1)</b> -> one clock read.</p>
+     *
+     * @return The effort.
+     * @throws CancellationException If the job was cancelled.
+     */
+    public Effort effort() {
+        checkCancelled();
+        if (budget == 0) {
+            return Effort.EXACT;
+        }
+
+        long remaining = started + budget - System.nanoTime();
+        if (remaining <= 0) {
+            return Effort.CACHED;
+        }
+        long eta = etaNanos();
+        boolean atRisk = eta >= 0 ? eta > remaining : remaining < budget / 2;
+        return atRisk ? Effort.REDUCED : Effort.EXACT;
+    }
+
+    /**
+     * Notes a token that didn't get the exact answer.
+     *
+     * @param word   The word, in lowercase.
+     * @param effort {@link Effort#REDUCED} if it got the cheaper search, {@link Effort#CACHED} if it was kept.
+     */
+    void degraded(String word, Effort effort) {
+        if (effort == Effort.REDUCED) {
+            reduced.increment();
+            REDUCED.increment();
+        } else {
+            passedThrough.increment();
+            PASSED_THROUGH.increment();
+        }
+        if (degradedWords.size() < REPORTED_WORDS) {
+            degradedWords.putIfAbsent(word, effort);
+        }
+    }
+
+    /**
+     * Sets the progress and tells the listener.
+     *
+     * @param done  The work done so far.
+     * @param total The whole work.
+     */
+    void progress(long done, long total) {
+        this.done = done;
+        this.total = total;
+        ProgressListener current = listener;
+        if (current != null) {
+            current.progress(done, total, etaNanos());
+        }
+    }
+
+    // Estimated time left from the rate so far, -1 before there is any progress
+    public long etaNanos() {
+        long doneNow = done;
+        long totalNow = total;
+        if (doneNow <= 0 || totalNow <= 0) {
+            return -1;
+        }
+        long elapsed = System.nanoTime() - started;
+        return (long) ((double) elapsed / doneNow * Math.max(0, totalNow - doneNow));
+    }
+
+    public long degradedTokens() {
+        return reduced.sum() + passedThrough.sum();
+    }
+
+    public long reducedTokens() {
+        return reduced.sum();
+    }
+
+    public long passedThroughTokens() {
+        return passedThrough.sum();
+    }
+
+    // Some of the degraded words (at most 20), in alphabetical order
+    public Map<String, Effort> degradedWords() {
+        return new TreeMap<>(degradedWords);
+    }
+
+    // One line about the degraded tokens, for example "Degraded 12 tokens (reduced 10, kept 2): ..."
+    public String summary() {
+        if (degradedTokens() == 0) {
+            return "No degraded tokens";
+        }
+        return "Degraded " + degradedTokens() + " tokens (reduced " + reducedTokens() + ", kept "
+                + passedThroughTokens() + "): " + String.join(", ", degradedWords().keySet());
+    }
+}
@@ -0,0 +1,192 @@
+package ie.atu.sw;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A long-running HTTP server that simplifies text with data that is loaded once and shared by every request.
+ *
+ * <p>Endpoints:</p>
+ * <ul>
+ *     <li>POST /simplify - the request body is UTF-8 text, the response is the simplified text. An X-Deadline-Ms
+ *     header (default -Dsimplifier.deadline) gives the request a time budget, see {@link SimplificationJob}. The
+ *     response then says how many tokens didn't get the exact answer in X-Degraded-Tokens, and which words in
+ *     X-Degraded-Words (URL encoded, comma separated, at most 20).</li>
+ *     <li>GET /metrics - request latency histogram and the process {@link Metrics} as JSON.</li>
+ *     <li>GET /health - returns "ok" once the server is ready.</li>
+ *     <li>GET /targets - the version, file and size of the current target words as JSON.</li>
+ *     <li>POST /targets - loads the list file named in the body (or the current file again if the body is empty)
+ *     and swaps it in, see {@link TargetVocabulary}. Requests already running finish with the old targets, whose search is closed
+ *     after the last of them.</li>
+ * </ul>
+ *
+ * <p>Every request runs in its own virtual thread, so many clients can be served at once. The request thread only
+ * reads the body, waits and writes the answer: the simplification itself runs on the compute pool (see
+ * {@link ExecutionModel}), so the CPU work of all requests shares one thread per core. The
+ * {@link TextSimplifier} and everything behind it is read-only (apart from the thread-safe replacement cache), so
+ * the requests share it without locking.</p>
+ */
+public class SimplificationServer {
+    // Largest request body accepted
+    private static final int MAX_BODY_BYTES = 16 * 1024 * 1024;
+
+    // The simplifier of a fixed table, or null when the targets can be reloaded
+    private final TextSimplifier simplifier;
+    private final TargetVocabulary targets;
+    private final HttpServer server;
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    /**
+     * Creates the server, call {@link #start()} to accept requests.
+     *
+     * @param simplifier The simplifier shared by all requests.
+     * @param address    The address to listen on, for example 127.0.0.1:8080.
+     * @throws IOException If the address can't be bound.
+     */
+    public SimplificationServer(TextSimplifier simplifier, InetSocketAddress address) throws IOException {
+        this(simplifier, null, address);
+    }
+
+    /**
+     * Creates a server whose target words can be reloaded with POST /targets.
+     *
+     * @param targets The target words, already loaded.
+     * @param address The address to listen on, for example 127.0.0.1:8080.
+     * @throws IOException If the address can't be bound.
+     */
+    public SimplificationServer(TargetVocabulary targets, InetSocketAddress address) throws IOException {
+        this(null, targets, address);
+    }
+
+    private SimplificationServer(TextSimplifier simplifier, TargetVocabulary targets, InetSocketAddress address)
+            throws IOException {
+        this.simplifier = simplifier;
+        this.targets = targets;
+        this.server = HttpServer.create(address, 0);
+        server.setExecutor(ExecutionModel.newIoExecutor());
+        server.createContext("/simplify", this::simplify);
+        server.createContext("/metrics", exchange -> respond(exchange, 200, "application/json",
+                "{\"requests\":" + latency.toJson() + ",\"process\":" + Metrics.toJson() + "}"));
+        server.createContext("/health", exchange -> respond(exchange, 200, "text/plain", "ok"));
+        server.createContext("/targets", this::targets);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops accepting requests and waits for the ones in progress.
+     *
+     * @param delaySeconds The longest time to wait for requests in progress.
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+    }
+
+    public InetSocketAddress address() {
+        return server.getAddress();
+    }
+
+    public LatencyHistogram latency() {
+        return latency;
+    }
+
+    private void simplify(HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            respond(exchange, 405, "text/plain", "Use POST");
+            return;
+        }
+
+        long start = System.nanoTime();
+        SimplificationJob job;
+        try {
+            String deadline = exchange.getRequestHeaders().getFirst("X-Deadline-Ms");
+            job = deadline == null ? SimplificationJob.fromProperties()
+                    : SimplificationJob.withBudget(Duration.ofMillis(Long.parseLong(deadline.trim())));
+        } catch (NumberFormatException e) {
+            respond(exchange, 400, "text/plain", "X-Deadline-Ms must be a number of milliseconds");
+            return;
+        }
+
+        byte[] body;
+        try (InputStream in = exchange.getRequestBody()) {
+            body = in.readNBytes(MAX_BODY_BYTES + 1);
+        }
+        if (body.length > MAX_BODY_BYTES) {
+            respond(exchange, 413, "text/plain", "Request body is larger than " + MAX_BODY_BYTES + " bytes");
+            return;
+        }
+
+        // The targets are taken once, so a reload during the request doesn't mix old and new targets, and the old
+        // search isn't closed under it
+        TargetVocabulary.Snapshot snapshot = targets == null ? null : targets.acquire();
+        try {
+            TextSimplifier simplifier = snapshot == null ? this.simplifier : snapshot.simplifier();
+            String simplified = simplifier.simplify(new String(body, StandardCharsets.UTF_8), job);
+            if (job.degradedTokens() > 0) {
+                List<String> words = new ArrayList<>();
+                for (String word : job.degradedWords().keySet()) {
+                    words.add(URLEncoder.encode(word, StandardCharsets.UTF_8));
+                }
+                exchange.getResponseHeaders().set("X-Degraded-Tokens", Long.toString(job.degradedTokens()));
+                exchange.getResponseHeaders().set("X-Degraded-Words", String.join(",", words));
+            }
+            respond(exchange, 200, "text/plain; charset=utf-8", simplified);
+        } catch (RuntimeException e) {
+            respond(exchange, 500, "text/plain", "Error: " + e.getMessage());
+        } finally {
+            if (snapshot != null) {
+                snapshot.release();
+            }
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    private void targets(HttpExchange exchange) throws IOException {
+        if (targets == null) {
+            respond(exchange, 409, "text/plain", "Targets are fixed by the precompiled replacement table");
+            return;
+        }
+
+        if ("POST".equals(exchange.getRequestMethod())) {
+            String file;
+            try (InputStream in = exchange.getRequestBody()) {
+                file = new String(in.readNBytes(4096), StandardCharsets.UTF_8).trim();
+            }
+            try {
+                targets.load(file.isEmpty() ? targets.current().file() : file);
+            } catch (IOException e) {
+                respond(exchange, 400, "text/plain", "Targets not loaded: " + e.getMessage());
+                return;
+            }
+        } else if (!"GET".equals(exchange.getRequestMethod())) {
+            respond(exchange, 405, "text/plain", "Use GET or POST");
+            return;
+        }
+
+        TargetVocabulary.Snapshot snapshot = targets.current();
+        respond(exchange, 200, "application/json", "{\"version\":" + snapshot.version() + ",\"file\":\""
+                + snapshot.file().replace("\\", "\\\\").replace("\"", "\\\"") + "\",\"words\":"
+                + snapshot.index().size() + "}");
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package ie.atu.sw;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event covering the simplification of one file or request.
+ */
+@Name("ie.atu.sw.Simplify")
+@Label("Simplify")
+@Category("Text Simplifier")
+@Description("Simplifying one input file or request")
+class SimplifyEvent extends Event {
+    @Label("Input")
+    String input;
+
+    @Label("Tokens")
+    long tokens;
+
+    @Label("Lines")
+    long lines;
+
+    @Label("Degraded Tokens")
+    long degraded;
+}
@@ -0,0 +1,220 @@
+package ie.atu.sw;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The Google-1000 target words as a versioned snapshot that can be swapped while simplification is running.
+ *
+ * <p>The embeddings are loaded once. Loading a new list file only looks its words up in the loaded embeddings and
+ * builds a new {@link VocabularyIndex}, which takes a few milliseconds. The new snapshot then replaces the old one
+ * in a single atomic step.</p>
+ *
+ * <p>Each document should call {@link #acquire()} once when it starts, use that snapshot until it is done and then
+ * {@link Snapshot#release()} it, so a document in progress keeps the old targets and the next one gets the new
+ * targets. Every snapshot has its own {@link ReplacementCache} and {@link TextSimplifier} (with its own tokenizer
+ * memo), so no answer from the old targets can leak into the new ones. The cache of the old snapshot is cleared on
+ * the swap, and its search (worker connections for the sharded search) is closed once the last document using it has
+ * released it.</p>
+ */
+public class TargetVocabulary implements Closeable {
+    /**
+     * Creates the search for the index of a new snapshot.
+     */
+    public interface SearchFactory {
+        NearestNeighbourSearch create(VocabularyIndex index) throws IOException;
+    }
+
+    /**
+     * One version of the targets. It is in use from its load until it is replaced, and by every document that
+     * acquired it; the search is closed when the last of them releases it.
+     */
+    public static final class Snapshot {
+        private final long version;
+        private final String file;
+        private final VocabularyIndex index;
+        private final ReplacementCache cache;
+        private final TextSimplifier simplifier;
+        private final NearestNeighbourSearch search;
+
+        // The vocabulary while this is the current snapshot, plus every document using it, 0 once closed
+        private final AtomicInteger users = new AtomicInteger(1);
+
+        private Snapshot(long version, String file, VocabularyIndex index, ReplacementCache cache,
+                         TextSimplifier simplifier, NearestNeighbourSearch search) {
+            this.version = version;
+            this.file = file;
+            this.index = index;
+            this.cache = cache;
+            this.simplifier = simplifier;
+            this.search = search;
+        }
+
+        // Starts at 1 and goes up by one on every load
+        public long version() {
+            return version;
+        }
+
+        // The list file the targets came from
+        public String file() {
+            return file;
+        }
+
+        // The target words and vectors
+        public VocabularyIndex index() {
+            return index;
+        }
+
+        // Replacements found with these targets
+        public ReplacementCache cache() {
+            return cache;
+        }
+
+        // A simplifier using these targets
+        public TextSimplifier simplifier() {
+            return simplifier;
+        }
+
+        // Adds a user, unless the snapshot is already closed
+        private boolean retain() {
+            int count = users.get();
+            while (count > 0) {
+                if (users.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+                count = users.get();
+            }
+            return false;
+        }
+
+        /**
+         * Gives back a snapshot taken with {@link #acquire()}. The last user closes the search.
+         */
+        public void release() {
+            if (users.decrementAndGet() == 0 && search instanceof Closeable closeable) {
+                try {
+                    closeable.close();
+                } catch (IOException e) {
+                    System.out.println("Search of targets v" + version + " not closed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    // Metrics
+    private static final Metrics.Counter RELOADS = Metrics.counter("targets.reloads");
+    private static final Metrics.Counter INVALIDATED = Metrics.counter("targets.invalidatedCacheEntries");
+    private static final LatencyHistogram RELOAD_LATENCY = Metrics.timer("targets.reload");
+
+    private final EmbeddingStore embeddings;
+    private final SearchFactory searches;
+    private final int cacheSize;
+    private final AtomicReference<Snapshot> current = new AtomicReference<>();
+
+    // Only one load at a time, a lock rather than synchronized so virtual threads aren't pinned while loading
+    private final ReentrantLock loading = new ReentrantLock();
+
+    // Constructor
+    public TargetVocabulary(EmbeddingStore embeddings, SearchFactory searches, int cacheSize) {
+        this.embeddings = embeddings;
+        this.searches = searches;
+        this.cacheSize = cacheSize;
+        Metrics.gauge("targets.version", () -> {
+            Snapshot snapshot = current.get();
+            return snapshot == null ? 0 : snapshot.version();
+        });
+        Metrics.gauge("targets.words", () -> {
+            Snapshot snapshot = current.get();
+            return snapshot == null ? 0 : snapshot.index().size();
+        });
+    }
+
+    /**
+     * Builds a snapshot from the list file and makes it the current one. Documents already started keep the
+     * snapshot they took, the old cache is cleared and the old search is closed when they are done.
+     *
+     * <p><b>Big-O Notation is O(g * m)</b> -> g = Number of words in the list file and m = Length of each vector.
+     * The embeddings are not read again, plus the cost of building the search (only the HNSW graph is
+     * expensive).</p>
+     *
+     * @param listFile Path to the new Google-1000 style list.
+     * @return The new snapshot.
+     * @throws IOException If the list file can't be read.
+     */
+    public Snapshot load(String listFile) throws IOException {
+        loading.lock();
+        try {
+            long start = System.nanoTime();
+
+            // A fresh manager sharing the loaded embeddings, so the old snapshot's words are never touched
+            DataLoadingManager targets = new DataLoadingManager();
+            targets.wordEmbeddings = embeddings;
+            targets.loadGoogle1000Words(listFile);
+
+            Snapshot previous = current.get();
+            ReplacementCache cache = new ReplacementCache(cacheSize);
+            NearestNeighbourSearch search = searches.create(targets.googleIndex);
+            WordResolver resolver = new SimilarityResolver(embeddings, targets.googleIndex, search);
+            Snapshot next = new Snapshot(previous == null ? 1 : previous.version() + 1, listFile,
+                    targets.googleIndex, cache, new TextSimplifier(cache.wrap(resolver), embeddings), search);
+            current.set(next);
+
+            // Answers from the old targets are no longer valid, the search goes with the last document using it
+            if (previous != null) {
+                INVALIDATED.add(previous.cache().size());
+                previous.cache().clear();
+                previous.release();
+                RELOADS.increment();
+            }
+            RELOAD_LATENCY.record(System.nanoTime() - start);
+            System.out.printf("Targets v%d: %d words from %s in %d ms%n", next.version(), next.index().size(),
+                    listFile, (System.nanoTime() - start) / 1_000_000);
+            return next;
+        } finally {
+            loading.unlock();
+        }
+    }
+
+    /**
+     * Takes the current snapshot for a new document, which must {@link Snapshot#release()} it when done.
+     *
+     * @return The current snapshot, or null before the first load.
+     */
+    public Snapshot acquire() {
+        while (true) {
+            Snapshot snapshot = current.get();
+            // A snapshot replaced and closed in the meantime is skipped, the new one is already current
+            if (snapshot == null || snapshot.retain()) {
+                return snapshot;
+            }
+        }
+    }
+
+    // The current snapshot without taking it, for its version, file and statistics. Null before the first load
+    public Snapshot current() {
+        return current.get();
+    }
+
+    /**
+     * Retires the current snapshot, its search is closed once the documents using it are done.
+     */
+    @Override
+    public void close() {
+        loading.lock();
+        try {
+            Snapshot previous = current.getAndSet(null);
+            if (previous != null) {
+                previous.release();
+            }
+        } finally {
+            loading.unlock();
+        }
+    }
+
+    public EmbeddingStore embeddings() {
+        return embeddings;
+    }
+}
@@ -0,0 +1,63 @@
+package ie.atu.sw;
+
+import java.util.Arrays;
+
+/**
+ * A piece of the input and its simplified output, the unit of work of the tokenized pipeline in
+ * {@link TextSimplifier}.
+ *
+ * <p>Chunks are pooled and reused for the whole file, so after the first few chunks the buffers stop growing and
+ * nothing new is allocated for the text itself.</p>
+ */
+final class TextChunk {
+    // Input text, of which the first inputLength chars are used
+    char[] input;
+    int inputLength;
+
+    // Simplified text, of which the first outputLength chars are used
+    char[] output;
+    int outputLength;
+
+    // Words and line breaks found in the input, and words answered from the per-row memo
+    long words;
+    long lines;
+    long memoHits;
+
+    // The job the chunk belongs to (null for exact answers), and how far into the input file it ends in bytes
+    SimplificationJob job;
+    long endByte;
+
+    // Scratch space for the lowercase form of a word, and the view passed to the lookups
+    char[] lowered = new char[64];
+    final CharSlice slice = new CharSlice();
+
+    // Row of every word of the input, in order (-1 for words without embeddings), filled before the output is written
+    int[] rows = new int[1024];
+
+    // Constructor
+    TextChunk(int capacity) {
+        input = new char[capacity];
+        output = new char[capacity + capacity / 4];
+    }
+
+    // Makes room for more output chars
+    void ensureOutput(int extra) {
+        if (outputLength + extra > output.length) {
+            output = Arrays.copyOf(output, Math.max(output.length * 2, outputLength + extra));
+        }
+    }
+
+    // Makes room for the row of one more word
+    void ensureRows(int words) {
+        if (words > rows.length) {
+            rows = Arrays.copyOf(rows, Math.max(rows.length * 2, words));
+        }
+    }
+
+    // Makes room for more input chars
+    void ensureInput(int capacity) {
+        if (capacity > input.length) {
+            input = Arrays.copyOf(input, Math.max(input.length * 2, capacity));
+        }
+    }
+}
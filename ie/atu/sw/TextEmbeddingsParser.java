@@ -0,0 +1,358 @@
+package ie.atu.sw;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Parses a text embeddings file ("word, 0.1, 0.2, ...") in parallel.
+ *
+ * <p>The file is split into byte ranges that start and end on a line break. Every range is parsed by its own
+ * worker straight from the bytes (no String per line, no split) into a private map, and the maps are merged at the
+ * end. This keeps the number of tasks equal to the number of ranges instead of one task per line.</p>
+ */
+public class TextEmbeddingsParser {
+    // Bytes read from the file at a time by each worker
+    private static final int BLOCK_SIZE = 1 << 20;
+
+    // Exact powers of ten for the fast number parsing path
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final int ranges;
+
+    // Constructor, one range per compute thread by default
+    public TextEmbeddingsParser() {
+        this(ExecutionModel.parallelism());
+    }
+
+    public TextEmbeddingsParser(int ranges) {
+        this.ranges = Math.max(1, ranges);
+    }
+
+    /**
+     * Parses the whole file.
+     *
+     * <p><b>Big-O Notation is O(n)</b> -> n = Size of the file in bytes. Every byte is looked at once, and the work
+     * is shared between the ranges.</p>
+     *
+     * <p>If a word appears more than once, the line closest to the end of the file wins.</p>
+     *
+     * @param fileName The path to the text file containing word embeddings.
+     * @return A map of every word (trimmed and in lowercase) to its vector.
+     * @throws IOException If the file can't be read or a line can't be parsed.
+     */
+    public Map<String, double[]> parse(String fileName) throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(fileName), StandardOpenOption.READ)) {
+            long[] bounds = lineAlignedBounds(channel);
+
+            // Parsing is CPU work, so the ranges go to the compute pool
+            List<Future<Map<String, double[]>>> futures = new ArrayList<>();
+            for (int i = 0; i + 1 < bounds.length; i++) {
+                final long from = bounds[i];
+                final long to = bounds[i + 1];
+                Callable<Map<String, double[]>> task = () -> parseRange(channel, from, to);
+                futures.add(ExecutionModel.compute().submit(task));
+            }
+
+            // Merge in file order, waiting for every range (nothing is silently dropped)
+            try {
+                Map<String, double[]> merged = null;
+                for (Future<Map<String, double[]>> future : futures) {
+                    Map<String, double[]> partial = future.get();
+                    if (merged == null) {
+                        merged = partial;
+                    } else {
+                        merged.putAll(partial);
+                    }
+                }
+                return merged == null ? new HashMap<>() : merged;
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException io) {
+                    throw io;
+                }
+                throw new IOException("Failed to parse " + fileName, e.getCause());
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            } finally {
+                // The channel is closed next, so stop any range still running
+                for (Future<Map<String, double[]>> future : futures) {
+                    future.cancel(false);
+                }
+            }
+        }
+    }
+
+    /**
+     * Splits the file into ranges of about equal size, moving every split forward to just after a line break.
+     *
+     * @param channel The file.
+     * @return The start of every range followed by the file size.
+     * @throws IOException If the file can't be read.
+     */
+    private long[] lineAlignedBounds(FileChannel channel) throws IOException {
+        long size = channel.size();
+        int count = (int) Math.max(1, Math.min(ranges, size / BLOCK_SIZE + 1));
+        long[] bounds = new long[count + 1];
+        bounds[count] = size;
+
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        for (int i = 1; i < count; i++) {
+            long position = Math.max(bounds[i - 1], size * i / count);
+
+            // Scan for the next line break
+            long split = size;
+            search:
+            while (position < size) {
+                probe.clear();
+                int read = channel.read(probe, position);
+                if (read <= 0) {
+                    break;
+                }
+                for (int j = 0; j < read; j++) {
+                    if (probe.get(j) == '\n') {
+                        split = position + j + 1;
+                        break search;
+                    }
+                }
+                position += read;
+            }
+            bounds[i] = split;
+        }
+        return bounds;
+    }
+
+    /**
+     * Parses all lines between two line aligned offsets.
+     *
+     * @param channel The file.
+     * @param from    The first byte of the range.
+     * @param to      The end of the range (exclusive).
+     * @return The words and vectors found in the range.
+     * @throws IOException If the file can't be read or a line can't be parsed.
+     */
+    private Map<String, double[]> parseRange(FileChannel channel, long from, long to) throws IOException {
+        Map<String, double[]> embeddings = new HashMap<>();
+        byte[] block = new byte[BLOCK_SIZE];
+        int filled = 0;
+        long position = from;
+        double[] values = new double[512];
+        long lines = 0;
+
+        while (position < to || filled > 0) {
+            // Top up the block after any partial line carried over
+            if (position < to) {
+                if (filled == block.length) {
+                    // A single line is longer than the block
+                    block = Arrays.copyOf(block, block.length * 2);
+                }
+                int length = (int) Math.min(block.length - filled, to - position);
+                ByteBuffer target = ByteBuffer.wrap(block, filled, length);
+                int read = channel.read(target, position);
+                if (read < 0) {
+                    break;
+                }
+                position += read;
+                filled += read;
+            }
+
+            // Parse every complete line, or everything if the range is finished
+            int lineStart = 0;
+            boolean last = position >= to;
+            for (int i = 0; i < filled; i++) {
+                if (block[i] == '\n') {
+                    values = parseLine(block, lineStart, i, values, embeddings);
+                    lineStart = i + 1;
+                    lines++;
+                }
+            }
+            if (last && lineStart < filled) {
+                values = parseLine(block, lineStart, filled, values, embeddings);
+                lineStart = filled;
+                lines++;
+            }
+
+            // Move the partial line to the front of the block
+            System.arraycopy(block, lineStart, block, 0, filled - lineStart);
+            filled -= lineStart;
+            if (last) {
+                break;
+            }
+        }
+
+        Metrics.BYTES_PARSED.add(to - from);
+        Metrics.LINES_PARSED.add(lines);
+        return embeddings;
+    }
+
+    /**
+     * Parses one line into the map. The word runs up to the first ", " and the numbers are separated by commas.
+     *
+     * @param bytes      The buffer holding the line.
+     * @param start      The first byte of the line.
+     * @param end        The end of the line (exclusive, without the line break).
+     * @param values     Scratch space for the numbers, reused between lines.
+     * @param embeddings The map to add the word to.
+     * @return The scratch space, which may have been grown.
+     * @throws IOException If a number can't be parsed.
+     */
+    private double[] parseLine(byte[] bytes, int start, int end, double[] values,
+                               Map<String, double[]> embeddings) throws IOException {
+        if (end > start && bytes[end - 1] == '\r') {
+            end--;
+        }
+        if (end == start) {
+            // Blank line
+            return values;
+        }
+
+        // The word is always first, then the numbers
+        int wordEnd = wordEnd(bytes, start, end);
+        String word = new String(bytes, start, wordEnd - start, StandardCharsets.UTF_8).trim().toLowerCase();
+        double[] vector = parseVector(bytes, wordEnd + 1, end, values);
+
+        embeddings.put(word, vector);
+        return vector.length > values.length ? new double[vector.length] : values;
+    }
+
+    // End of the word at the start of a line, the first ", " (or the end of the line)
+    static int wordEnd(byte[] bytes, int start, int end) {
+        int wordEnd = start;
+        while (wordEnd < end && !(bytes[wordEnd] == ',' && wordEnd + 1 < end && bytes[wordEnd + 1] == ' ')) {
+            wordEnd++;
+        }
+        return wordEnd;
+    }
+
+    /**
+     * Parses the comma separated numbers after the word.
+     *
+     * @param bytes  The buffer holding the line.
+     * @param start  The first byte after the word's comma.
+     * @param end    The end of the line (exclusive).
+     * @param values Scratch space for the numbers, grown on a copy if too small.
+     * @return The numbers, in an array of their exact length.
+     * @throws IOException If a number can't be parsed.
+     */
+    static double[] parseVector(byte[] bytes, int start, int end, double[] values) throws IOException {
+        int count = 0;
+        int i = start;
+        while (i < end) {
+            int numberEnd = i;
+            while (numberEnd < end && bytes[numberEnd] != ',') {
+                numberEnd++;
+            }
+            if (count == values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+            values[count++] = parseDouble(bytes, i, numberEnd);
+            i = numberEnd + 1;
+        }
+        return Arrays.copyOf(values, count);
+    }
+
+    /**
+     * Parses a decimal number straight from the bytes.
+     *
+     * <p>Numbers with up to 15 significant digits and a small exponent (all normal embeddings files) are built from
+     * an exact long and an exact power of ten, which gives the same correctly rounded result as
+     * {@link Double#parseDouble}. Anything else falls back to Double.parseDouble.</p>
+     *
+     * @param bytes The buffer holding the number.
+     * @param start The first byte of the number.
+     * @param end   The end of the number (exclusive).
+     * @return The value.
+     * @throws IOException If the bytes are not a number.
+     */
+    static double parseDouble(byte[] bytes, int start, int end) throws IOException {
+        // Surrounding spaces are allowed, as with Double.parseDouble
+        while (start < end && bytes[start] <= ' ') start++;
+        while (end > start && bytes[end - 1] <= ' ') end--;
+
+        int i = start;
+        boolean negative = false;
+        if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+            negative = bytes[i] == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean anyDigits = false;
+
+        // Whole part
+        while (i < end && bytes[i] >= '0' && bytes[i] <= '9') {
+            if (digits < 18) {
+                mantissa = mantissa * 10 + (bytes[i] - '0');
+                if (mantissa != 0) digits++;
+            } else {
+                exponent++;
+            }
+            anyDigits = true;
+            i++;
+        }
+
+        // Fraction
+        if (i < end && bytes[i] == '.') {
+            i++;
+            while (i < end && bytes[i] >= '0' && bytes[i] <= '9') {
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (bytes[i] - '0');
+                    if (mantissa != 0) digits++;
+                    exponent--;
+                }
+                anyDigits = true;
+                i++;
+            }
+        }
+
+        // Exponent
+        if (anyDigits && i < end && (bytes[i] == 'e' || bytes[i] == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+                negativeExponent = bytes[i] == '-';
+                i++;
+            }
+            int value = 0;
+            boolean exponentDigits = false;
+            while (i < end && bytes[i] >= '0' && bytes[i] <= '9') {
+                value = Math.min(value * 10 + (bytes[i] - '0'), 100_000);
+                exponentDigits = true;
+                i++;
+            }
+            if (!exponentDigits) {
+                anyDigits = false;
+            }
+            exponent += negativeExponent ? -value : value;
+        }
+
+        // Fast path: both parts exactly representable, so one operation gives the correctly rounded result
+        if (anyDigits && i == end && digits <= 15 && Math.abs(exponent) <= 22) {
+            double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+            return negative ? -value : value;
+        }
+
+        // Slow path for long, unusual or invalid numbers
+        String text = new String(bytes, start, end - start, StandardCharsets.ISO_8859_1);
+        try {
+            return Double.parseDouble(text);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid number in embeddings file: " + text);
+        }
+    }
+}
@@ -1,89 +1,580 @@
 package ie.atu.sw;
 
 import java.io.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
 
 /**
  * This class is responsible for the actual text simplification
  */
 public class TextSimplifier {
-    // References to our maps and to the cosine similarity class
-    private final ConcurrentHashMap<String, double[]> wordEmbeddings;
-    private final ConcurrentHashMap<String, double[]> googleWords;
-    private final CosineSimilarityCalculator cosineSimilarityCalculator;
+    // Lines handed to a worker at a time
+    private static final int BATCH_LINES = 256;
+
+    // Batches waiting to be written, this bounds memory use for any size of input
+    private static final int MAX_PENDING_BATCHES = 2 * Runtime.getRuntime().availableProcessors();
+
+    // Chars handed to a worker at a time by the tokenized pipeline
+    private static final int CHUNK_CHARS = 64 * 1024;
+
+    // Marks the end of the input in the queue
+    private static final Future<String[]> END = CompletableFuture.completedFuture(new String[0]);
+    private static final Future<TextChunk> END_OF_CHUNKS = CompletableFuture.completedFuture(null);
+
+    // Decides what each word is replaced with
+    private final WordResolver resolver;
+
+    // Finds the words and writes the output, unless lines are split on spaces (-Dsimplifier.tokenizer=split)
+    private final Tokenizer tokenizer;
+    private final boolean splitOnSpaces;
 
     // Constructor
-    public TextSimplifier(ConcurrentHashMap<String, double[]> wordEmbeddings, ConcurrentHashMap<String, double[]> googleWords) {
-        this.wordEmbeddings = wordEmbeddings;
-        this.googleWords = googleWords;
-        this.cosineSimilarityCalculator = new CosineSimilarityCalculator();
+    public TextSimplifier(EmbeddingStore wordEmbeddings, VocabularyIndex googleIndex) {
+        this(new SimilarityResolver(wordEmbeddings, googleIndex), wordEmbeddings);
+    }
+
+    public TextSimplifier(WordResolver resolver) {
+        this(resolver, null);
+    }
+
+    /**
+     * Creates a simplifier. When the store the resolver searches is given, words are looked up by their row in it
+     * straight from the input buffer, see {@link Tokenizer}.
+     *
+     * @param resolver       Decides what each word is replaced with.
+     * @param wordEmbeddings The embeddings behind the resolver, or null.
+     */
+    public TextSimplifier(WordResolver resolver, EmbeddingStore wordEmbeddings) {
+        this(resolver, wordEmbeddings, "split".equalsIgnoreCase(System.getProperty("simplifier.tokenizer", "words")));
+    }
+
+    // Same as above, with the pipeline chosen by the caller instead of -Dsimplifier.tokenizer
+    TextSimplifier(WordResolver resolver, EmbeddingStore wordEmbeddings, boolean splitOnSpaces) {
+        this.resolver = resolver;
+        this.tokenizer = new Tokenizer(resolver, wordEmbeddings);
+        this.splitOnSpaces = splitOnSpaces;
     }
 
     /**
      * This method simplifies the input text by replacing each word with its most similar match the Google-1000 words
      * list based on Cosine Similarity.
      *
-     * <p>It reads in the line of text and splits it by " ". Each word is saved in an array 'words'. Then we loop
-     * through all the words in the array, check to see if they have embeddings and if so, then calculate similarity
-     * and swap (or don't).</p>
+     * <p>Words are found by the {@link Tokenizer}: punctuation, spacing and line breaks are kept exactly, and the case
+     * of each word is ignored for the lookup and put back on the replacement. With -Dsimplifier.tokenizer=split, each
+     * line is split on single spaces instead and rejoined with single spaces (the original behaviour).</p>
+     *
+     * <p>The work is done as a pipeline: a reader on a virtual thread cuts the input into chunks (or batches of
+     * lines), every chunk is simplified on the compute pool (see {@link ExecutionModel}), and this thread writes the
+     * finished chunks out in the order they were read. The queue between the reader and the writer is bounded, so the reader
+     * waits (backpressure) when the workers fall behind and memory use stays constant no matter how big the input
+     * file is. The output is exactly the same as processing the lines one at a time.</p>
      *
      * <p><b>Big-O Notation is O(n * m)</b></p> -> where n = Number of lines in the input file and m = Number of words
      * per line. We loop through each line (array with words) and for each word we search the map (O(1)) and do
-     * the swapping.
+     * the swapping. The batches are processed in parallel.
      *
      * @param inputFile  Path to the input text file containing sentences to simplify.
      * @param outputFile Path to the output text file where the simplified text will be saved to.
      * @throws IOException If an error occurs.
      */
     public void simplifyText(String inputFile, String outputFile) throws IOException {
-        try (BufferedReader reader = new BufferedReader(new FileReader(inputFile));
-             BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile))) {
+        simplifyText(inputFile, outputFile, SimplificationJob.fromProperties());
+    }
+
+    // Same as simplifyText(inputFile, outputFile), as part of the given job
+    public void simplifyText(String inputFile, String outputFile, SimplificationJob job) throws IOException {
+        try {
+            simplifyFile(inputFile, outputFile, job);
+        } catch (FileNotFoundException e) {
+            System.out.println("File not found");
+        } catch (IOException e) {
+            System.out.println("I/O exception");
+        }
+    }
+
+    /**
+     * Does the same as {@link #simplifyText(String, String)}, but lets errors through to the caller so it can tell
+     * whether the output is complete.
+     *
+     * @param inputFile  Path to the input text file containing sentences to simplify.
+     * @param outputFile Path to the output text file where the simplified text will be saved to.
+     * @return The number of words written.
+     * @throws IOException If the input can't be read or the output can't be written.
+     */
+    public long simplifyFile(String inputFile, String outputFile) throws IOException {
+        return simplifyFile(inputFile, outputFile, SimplificationJob.fromProperties());
+    }
+
+    /**
+     * Simplifies a file as part of a job, which sets the time budget, can cancel it and is told about the progress
+     * in bytes of the input. See {@link SimplificationJob}.
+     *
+     * @param inputFile  Path to the input text file containing sentences to simplify.
+     * @param outputFile Path to the output text file where the simplified text will be saved to.
+     * @param job        The job.
+     * @return The number of words written.
+     * @throws IOException                                 If the input can't be read or the output can't be written.
+     * @throws java.util.concurrent.CancellationException If the job was cancelled, the output is then incomplete.
+     */
+    public long simplifyFile(String inputFile, String outputFile, SimplificationJob job) throws IOException {
+        SimplifyEvent event = new SimplifyEvent();
+        event.begin();
+        long start = System.nanoTime();
+        long lines = Metrics.LINES.sum();
+        long degraded = job.degradedTokens();
+
+        long words = splitOnSpaces ? simplifyLines(inputFile, outputFile, job)
+                : simplifyChunks(inputFile, outputFile, job);
+
+        // Metrics and JFR event for the file (the line count is approximate if other files run at the same time)
+        Metrics.FILE_LATENCY.record(System.nanoTime() - start);
+        event.input = inputFile;
+        event.tokens = words;
+        event.lines = Metrics.LINES.sum() - lines;
+        event.degraded = job.degradedTokens() - degraded;
+        event.commit();
+        return words;
+    }
+
+    /**
+     * The tokenized pipeline. The input is read in chunks of about {@link #CHUNK_CHARS} chars, cut after the last
+     * whitespace so no word is split between chunks. The chunks come from a fixed pool and go back to it once they
+     * are written, so the buffers are reused for the whole file.
+     *
+     * @param inputFile  Path to the input text file.
+     * @param outputFile Path to the output text file.
+     * @return The number of words found.
+     * @throws IOException If the input can't be read or the output can't be written.
+     */
+    private long simplifyChunks(String inputFile, String outputFile, SimplificationJob job) throws IOException {
+        long size = new File(inputFile).length();
+        try (CountingInputStream input = new CountingInputStream(new FileInputStream(inputFile));
+             Reader reader = new InputStreamReader(input);
+             Writer writer = new BufferedWriter(new FileWriter(outputFile));
+             var readers = ExecutionModel.newIoExecutor()) {
+
+            // Every chunk is either free, being filled, waiting in the queue or being written
+            BlockingQueue<TextChunk> free = new ArrayBlockingQueue<>(MAX_PENDING_BATCHES + 2);
+            for (int i = 0; i < MAX_PENDING_BATCHES + 2; i++) {
+                free.add(new TextChunk(CHUNK_CHARS));
+            }
+
+            BlockingQueue<Future<TextChunk>> pending = new ArrayBlockingQueue<>(MAX_PENDING_BATCHES);
+            // Reading runs on a virtual thread, simplifying the chunks on the compute pool
+            Future<?> producer = readers.submit(() -> {
+                readChunks(reader, input, job, ExecutionModel.compute(), free, pending);
+                return null;
+            });
+
+            try {
+                // Write the chunks in order, waiting for each one in turn
+                long words = 0;
+                Future<TextChunk> next;
+                while ((next = pending.take()) != END_OF_CHUNKS) {
+                    TextChunk chunk = next.get();
+                    job.checkCancelled();
+                    writer.write(chunk.output, 0, chunk.outputLength);
+                    words += chunk.words;
+                    Metrics.TOKENS.add(chunk.words);
+                    Metrics.LINES.add(chunk.lines);
+                    Metrics.ROW_MEMO_HITS.add(chunk.memoHits);
+                    job.progress(Math.min(chunk.endByte, size), size);
+                    free.put(chunk);
+                }
+                producer.get();
+                return words;
+            } catch (ExecutionException e) {
+                throw failure(e);
+            } finally {
+                // Stops the reader if writing failed
+                producer.cancel(true);
+            }
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // The cause of a failed chunk or batch, a cancelled job stays cancelled
+    private static IOException failure(ExecutionException e) {
+        if (e.getCause() instanceof CancellationException cancelled) {
+            throw cancelled;
+        }
+        return e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+    }
+
+    /**
+     * Reads the input into chunks taken from the pool and submits each chunk to a worker. The futures are queued in
+     * reading order, followed by {@link #END_OF_CHUNKS} (or a failed future if the input can't be read).
+     *
+     * @param reader   The input file.
+     * @param input    The bytes under the reader, to note where each chunk ends.
+     * @param job      The job the chunks belong to.
+     * @param executor Where the chunks are simplified.
+     * @param free     The pool of chunks, blocks when every chunk is in use.
+     * @param pending  The queue read by the writer, blocks when full.
+     * @throws InterruptedException If the writer stopped early.
+     */
+    private void readChunks(Reader reader, CountingInputStream input, SimplificationJob job, ExecutorService executor,
+                            BlockingQueue<TextChunk> free, BlockingQueue<Future<TextChunk>> pending)
+            throws InterruptedException {
+        try {
+            // The text after the last cut, carried over to the next chunk
+            char[] carry = new char[CHUNK_CHARS];
+            int carried = 0;
+            boolean end = false;
+
+            while (!end) {
+                job.checkCancelled();
+                TextChunk chunk = free.take();
+                chunk.ensureInput(carried + CHUNK_CHARS);
+                System.arraycopy(carry, 0, chunk.input, 0, carried);
+                int length = carried;
+
+                // Fill the chunk
+                int read = 0;
+                while (length < chunk.input.length && (read = reader.read(chunk.input, length,
+                        chunk.input.length - length)) >= 0) {
+                    length += read;
+                }
+                end = read < 0;
+
+                // Cut after the last whitespace, unless the input ended or there is none
+                int cut = length;
+                if (!end) {
+                    while (cut > 0 && !Character.isWhitespace(chunk.input[cut - 1])) {
+                        cut--;
+                    }
+                    if (cut == 0) {
+                        cut = length;
+                    }
+                }
+                carried = length - cut;
+                if (carried > carry.length) {
+                    carry = new char[carried];
+                }
+                System.arraycopy(chunk.input, cut, carry, 0, carried);
+                chunk.inputLength = cut;
+                chunk.job = job;
+                chunk.endByte = end ? Long.MAX_VALUE : input.count();
+
+                pending.put(executor.submit(() -> {
+                    tokenizer.simplify(chunk, chunk.inputLength);
+                    return chunk;
+                }));
+            }
+            pending.put(END_OF_CHUNKS);
+        } catch (IOException | CancellationException e) {
+            // Let the writer find out, in order, after the chunks read so far
+            pending.put(CompletableFuture.failedFuture(e));
+        }
+    }
+
+    // The line based pipeline, used with -Dsimplifier.tokenizer=split
+    private long simplifyLines(String inputFile, String outputFile, SimplificationJob job) throws IOException {
+        long size = new File(inputFile).length();
+        try (CountingInputStream input = new CountingInputStream(new FileInputStream(inputFile));
+             BufferedReader reader = new BufferedReader(new InputStreamReader(input));
+             BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile));
+             var readers = ExecutionModel.newIoExecutor()) {
+
+            // Batches in reading order, each one finishes whenever its worker does
+            BlockingQueue<Future<String[]>> pending = new ArrayBlockingQueue<>(MAX_PENDING_BATCHES);
+            BlockingQueue<Long> ends = new LinkedBlockingQueue<>();
+            // Reading runs on a virtual thread, simplifying the batches on the compute pool
+            Future<?> producer = readers.submit(() -> {
+                readBatches(reader, input, job, ExecutionModel.compute(), pending, ends);
+                return null;
+            });
+
+            try {
+                // Write the batches in order, waiting for each one in turn
+                long words = 0;
+                Future<String[]> batch;
+                while ((batch = pending.take()) != END) {
+                    String[] lines = batch.get();
+                    job.checkCancelled();
+                    for (String line : lines) {
+                        writer.write(line);
+                        writer.newLine();
+                        int count = countWords(line);
+                        words += count;
+                        Metrics.TOKENS.add(count);
+                        Metrics.LINES.increment();
+                    }
+                    job.progress(Math.min(ends.take(), size), size);
+                }
+                producer.get();
+                return words;
+            } catch (ExecutionException e) {
+                throw failure(e);
+            } finally {
+                // Stops the reader if writing failed
+                producer.cancel(true);
+            }
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Reads the input in batches of lines and submits each batch to a worker. The futures are queued in reading
+     * order, followed by {@link #END} (or a failed future if the input can't be read).
+     *
+     * @param reader   The input file.
+     * @param input    The bytes under the reader, to note where each batch ends.
+     * @param job      The job the batches belong to.
+     * @param executor Where the batches are simplified.
+     * @param pending  The queue read by the writer, blocks when full.
+     * @param ends     Where each batch ends in the input, in bytes, put before its future.
+     * @throws InterruptedException If the writer stopped early.
+     */
+    private void readBatches(BufferedReader reader, CountingInputStream input, SimplificationJob job,
+                             ExecutorService executor, BlockingQueue<Future<String[]>> pending,
+                             BlockingQueue<Long> ends) throws InterruptedException {
+        try {
+            String[] lines = new String[BATCH_LINES];
+            int count = 0;
 
             String line;
             while ((line = reader.readLine()) != null) {
-                // Get sentence and split it by spaces
-                String[] words = line.split(" ");
-                StringBuilder newLine = new StringBuilder();
-
-                // Process each word concurrently
-                var executor = Executors.newVirtualThreadPerTaskExecutor();
-                executor.submit(() -> {
-                    for (String currentWord : words) {
-                        // Get word embeddings is they exist
-                        String newWord;
-                        if (wordEmbeddings.containsKey(currentWord)) {
-                            // Store embeddings for current word
-                            double[] embeddings = wordEmbeddings.get(currentWord);
-
-                            // Get the closest word
-                            newWord = cosineSimilarityCalculator.closestWord(embeddings, googleWords);
-                        } else {
-                            // Keep original
-                            newWord = currentWord;
-                        }
-
-                        // Thread-safe append
-                        synchronized (newLine) {
-                            newLine.append(newWord).append(" ");
-                        }
-                    }
-                });
+                lines[count++] = line;
+                if (count == BATCH_LINES) {
+                    job.checkCancelled();
+                    ends.put(input.count());
+                    pending.put(submitBatch(executor, lines, count, job));
+                    lines = new String[BATCH_LINES];
+                    count = 0;
+                }
+            }
+            if (count > 0) {
+                ends.put(Long.MAX_VALUE);
+                pending.put(submitBatch(executor, lines, count, job));
+            }
+            pending.put(END);
+        } catch (IOException | CancellationException e) {
+            // Let the writer find out, in order, after the batches read so far
+            pending.put(CompletableFuture.failedFuture(e));
+        }
+    }
 
-                // Shutdown and await termination
-                executor.shutdown();
-                executor.awaitTermination(1, java.util.concurrent.TimeUnit.MINUTES);
+    /**
+     * Simplifies text held in memory, used by the {@link SimplificationServer}. The text is handled like an input
+     * file. With -Dsimplifier.tokenizer=split it is split into lines, and every output line ends with "\n".
+     *
+     * @param text The text to simplify.
+     * @return The simplified text.
+     */
+    public String simplify(String text) {
+        return simplify(text, SimplificationJob.unlimited());
+    }
 
-                // Print result to file
-                writer.write(newLine.toString().trim());
-                writer.newLine();
+    /**
+     * Simplifies text held in memory as part of a job, see {@link SimplificationJob}. Progress is counted in chars.
+     *
+     * <p>Like the file pipeline, the calling thread (a virtual request thread in the server) only waits: the text is
+     * simplified on the compute pool, as one chunk or one task per batch of lines, see {@link ExecutionModel}.</p>
+     *
+     * @param text The text to simplify.
+     * @param job  The job.
+     * @return The simplified text.
+     * @throws CancellationException If the job was cancelled.
+     */
+    public String simplify(String text, SimplificationJob job) {
+        job.checkCancelled();
+        ExecutorService compute = ExecutionModel.compute();
+        if (!splitOnSpaces) {
+            SimplifyEvent event = new SimplifyEvent();
+            event.begin();
+            TextChunk chunk = new TextChunk(text.length());
+            text.getChars(0, text.length(), chunk.input, 0);
+            chunk.job = job;
+            await(compute.submit(() -> tokenizer.simplify(chunk, text.length())));
+            Metrics.TOKENS.add(chunk.words);
+            Metrics.LINES.add(chunk.lines);
+            Metrics.ROW_MEMO_HITS.add(chunk.memoHits);
+            job.progress(text.length(), text.length());
+
+            event.input = "request";
+            event.tokens = chunk.words;
+            event.lines = chunk.lines;
+            event.degraded = job.degradedTokens();
+            event.commit();
+            return new String(chunk.output, 0, chunk.outputLength);
+        }
+
+        // Every batch is submitted before any is waited for, so they run in parallel
+        String[] lines = text.lines().toArray(String[]::new);
+        List<Future<String[]>> batches = new ArrayList<>();
+        for (int start = 0; start < lines.length; start += BATCH_LINES) {
+            int count = Math.min(BATCH_LINES, lines.length - start);
+            batches.add(submitBatch(compute, Arrays.copyOfRange(lines, start, start + count), count, job));
+        }
+        StringBuilder simplified = new StringBuilder(text.length());
+        for (Future<String[]> batch : batches) {
+            for (String line : await(batch)) {
+                simplified.append(line).append('\n');
             }
-        } catch (FileNotFoundException e) {
-            System.out.println("File not found");
-        } catch (IOException e) {
-            System.out.println("I/O exception");
+        }
+        job.progress(text.length(), text.length());
+        return simplified.toString();
+    }
+
+    /**
+     * Waits for work handed to the compute pool.
+     *
+     * @param future The work.
+     * @return Its result.
+     * @throws CancellationException If the job was cancelled.
+     * @throws RuntimeException      If the work failed, or the waiting thread was interrupted.
+     */
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException failure) {
+                throw failure;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new RuntimeException(e.getCause());
         } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
             throw new RuntimeException(e);
         }
     }
+
+    private Future<String[]> submitBatch(ExecutorService executor, String[] lines, int count, SimplificationJob job) {
+        return executor.submit(() -> simplifyBatch(lines, count, job));
+    }
+
+    /**
+     * Simplifies a batch of lines. Every line is split by " ", the unique words of the whole batch are resolved in
+     * one call to the {@link WordResolver} (so the similarity search can work on them together), and then each line
+     * is rebuilt from the answers.
+     *
+     * <p>If the job is short of time the words are answered one by one with less effort instead, see
+     * {@link SimplificationJob}.</p>
+     *
+     * @param lines The lines from the input file.
+     * @param count The number of lines in use.
+     * @param job   The job the lines belong to.
+     * @return The simplified lines.
+     */
+    String[] simplifyBatch(String[] lines, int count, SimplificationJob job) {
+        long start = System.nanoTime();
+
+        // Get sentences and split them by spaces
+        String[][] words = new String[count][];
+        Set<String> unique = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+            words[i] = lines[i].split(" ");
+            unique.addAll(Arrays.asList(words[i]));
+        }
+
+        // Get the closest words (or keep the originals if they have no embeddings)
+        SimplificationJob.Effort effort = job.effort();
+        Map<String, String> replacements;
+        Map<String, SimplificationJob.Effort> degraded = Map.of();
+        if (effort == SimplificationJob.Effort.EXACT) {
+            replacements = resolver.resolveAll(unique);
+        } else {
+            replacements = new HashMap<>();
+            degraded = new HashMap<>();
+            for (String word : unique) {
+                // A known answer first, then the cheaper search if allowed, otherwise the word is kept
+                String replacement = resolver.resolveWithin(word, SimplificationJob.Effort.CACHED);
+                if (replacement == null && effort == SimplificationJob.Effort.REDUCED) {
+                    replacement = resolver.resolveWithin(word, effort);
+                    if (replacement != null) {
+                        degraded.put(word, SimplificationJob.Effort.REDUCED);
+                    }
+                }
+                if (replacement == null) {
+                    replacement = word;
+                    degraded.put(word, SimplificationJob.Effort.CACHED);
+                }
+                replacements.put(word, replacement);
+            }
+        }
+
+        String[] simplified = new String[count];
+        for (int i = 0; i < count; i++) {
+            StringBuilder newLine = new StringBuilder();
+            for (String currentWord : words[i]) {
+                newLine.append(replacements.get(currentWord)).append(" ");
+                SimplificationJob.Effort tokenEffort = degraded.get(currentWord);
+                if (tokenEffort != null) {
+                    job.degraded(currentWord, tokenEffort);
+                }
+            }
+            simplified[i] = newLine.toString().trim();
+        }
+
+        // The lines are resolved together, so each gets the average time of the batch
+        long perLine = (System.nanoTime() - start) / Math.max(1, count);
+        for (int i = 0; i < count; i++) {
+            Metrics.LINE_LATENCY.record(perLine);
+        }
+        return simplified;
+    }
+
+    // Number of words in a simplified line (the words are separated by single spaces)
+    private static int countWords(String line) {
+        if (line.isEmpty()) {
+            return 0;
+        }
+        int words = 1;
+        for (int i = 0; i < line.length(); i++) {
+            if (line.charAt(i) == ' ') {
+                words++;
+            }
+        }
+        return words;
+    }
+
+    // Counts the bytes read from the input file, for the progress of a job
+    private static final class CountingInputStream extends FilterInputStream {
+        private volatile long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        long count() {
+            return count;
+        }
+    }
 }
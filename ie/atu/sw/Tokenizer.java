@@ -0,0 +1,292 @@
+package ie.atu.sw;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Splits text into words and the characters between them in place, and writes the simplified text into a reusable
+ * buffer.
+ *
+ * <p>A word is a run of letters and digits, with apostrophes allowed between letters ("don't"). Everything else
+ * (spaces, tabs, line breaks and punctuation) is copied to the output exactly as it is. Words are looked up in
+ * lowercase, and the replacement gets the case of the original word back ("Hello" gives "Hi", "HELLO" gives "HI").
+ * Words without embeddings are kept as they are.</p>
+ *
+ * <p>When the {@link EmbeddingStore} is known, a word is found by its row straight from the buffer, and the answer
+ * is remembered per row as a shared char[]. The rows of a chunk are found first, and the words not seen before are
+ * resolved together with one {@link WordResolver#resolveAll(java.util.Collection)} call, so the search can batch
+ * them (see {@link ExactSearch#topK(float[][], int)}, or one round trip with {@link ShardedSearch}). Then the output
+ * is written. After a word has been seen once, simplifying it again allocates nothing. Without a store (for example with a {@link ReplacementTable}) each word is turned into a String and passed
+ * to the {@link WordResolver}.</p>
+ *
+ * <p>If the chunk belongs to a {@link SimplificationJob}, the job decides how much work a new word may get. Answers
+ * that aren't exact are not remembered.</p>
+ */
+public class Tokenizer {
+    private final WordResolver resolver;
+    private final EmbeddingStore store;
+
+    // Replacement of every row of the store that has been seen, null until then
+    private final AtomicReferenceArray<char[]> replacements;
+
+    // One shared char[] per target word
+    private final ConcurrentHashMap<String, char[]> targets = new ConcurrentHashMap<>();
+
+    // Marks a word that is kept as it is
+    private static final char[] KEEP = new char[0];
+
+    // Constructor, the store can be null
+    public Tokenizer(WordResolver resolver, EmbeddingStore store) {
+        this.resolver = resolver;
+        this.store = store;
+        this.replacements = new AtomicReferenceArray<>(store == null ? 0 : store.size());
+    }
+
+    /**
+     * Simplifies part of a chunk's input into its output, which is emptied first.
+     *
+     * <p><b>Big-O Notation is O(n)</b> -> n = Number of characters. Every character is looked at twice (once to find
+     * the rows, once to write), and each word costs one hash lookup once its replacement is known.</p>
+     *
+     * @param chunk The chunk holding the text.
+     * @param to    The end of the text to simplify (exclusive), the text starts at 0.
+     */
+    public void simplify(TextChunk chunk, int to) {
+        char[] text = chunk.input;
+        chunk.outputLength = 0;
+        chunk.words = 0;
+        chunk.lines = 0;
+        chunk.memoHits = 0;
+        long lineStart = System.nanoTime();
+
+        // Every line gets its share of the batched search, like the lines of a batch in the split path
+        long searchShare = 0;
+        if (store != null) {
+            int breaks = resolveRows(chunk, to);
+            long now = System.nanoTime();
+            searchShare = (now - lineStart) / Math.max(1, breaks);
+            lineStart = now;
+        }
+
+        int i = 0;
+        int word = 0;
+        while (i < to) {
+            // Copy everything up to the next word, timing each line as its break goes past
+            int wordStart = i;
+            while (wordStart < to && !Character.isLetterOrDigit(text[wordStart])) {
+                if (text[wordStart] == '\n') {
+                    long now = System.nanoTime();
+                    Metrics.LINE_LATENCY.record(now - lineStart + searchShare);
+                    lineStart = now;
+                    chunk.lines++;
+                }
+                wordStart++;
+            }
+            append(chunk, text, i, wordStart);
+            if (wordStart == to) {
+                break;
+            }
+
+            int wordEnd = wordEnd(text, wordStart, to);
+            char[] replacement = store == null ? replacement(chunk, text, wordStart, wordEnd)
+                    : replacement(chunk, chunk.rows[word++]);
+            if (replacement == KEEP) {
+                append(chunk, text, wordStart, wordEnd);
+            } else {
+                appendWithCase(chunk, replacement, text, wordStart, wordEnd);
+            }
+            chunk.words++;
+            i = wordEnd;
+        }
+    }
+
+    /**
+     * Finds the end of the word starting at the given position.
+     *
+     * @param text  The text.
+     * @param start The first char of the word (a letter or digit).
+     * @param to    The end of the text.
+     * @return The end of the word (exclusive).
+     */
+    static int wordEnd(char[] text, int start, int to) {
+        int end = start;
+        while (end < to) {
+            char c = text[end];
+            if (Character.isLetterOrDigit(c)) {
+                end++;
+            } else if ((c == '\'' || c == '\u2019') && end + 1 < to && Character.isLetter(text[end + 1])
+                    && Character.isLetter(text[end - 1])) {
+                // Apostrophe inside a word
+                end++;
+            } else {
+                break;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Finds the row of every word of the chunk, and resolves the words whose replacement isn't known yet in one
+     * batch. If the job is short of time they are left for {@link #replacement(TextChunk, int)} to answer one by one
+     * with less effort.
+     *
+     * <p><b>Big-O Notation is O(n)</b> -> n = Number of characters, plus one batched search for the new words.</p>
+     *
+     * @param chunk The chunk holding the text.
+     * @param to    The end of the text.
+     * @return The number of line breaks in the text.
+     */
+    private int resolveRows(TextChunk chunk, int to) {
+        char[] text = chunk.input;
+        int words = 0;
+        int breaks = 0;
+
+        // New words and their rows, only made when there are any
+        Map<String, Integer> unknown = null;
+
+        int i = 0;
+        while (i < to) {
+            if (!Character.isLetterOrDigit(text[i])) {
+                if (text[i] == '\n') {
+                    breaks++;
+                }
+                i++;
+                continue;
+            }
+            int end = wordEnd(text, i, to);
+            int row = store.row(lowered(chunk, text, i, end));
+            chunk.ensureRows(words + 1);
+            chunk.rows[words++] = row;
+            if (row >= 0) {
+                if (replacements.get(row) != null) {
+                    chunk.memoHits++;
+                } else {
+                    if (unknown == null) {
+                        unknown = new HashMap<>();
+                    }
+                    unknown.putIfAbsent(store.word(row), row);
+                }
+            }
+            i = end;
+        }
+
+        // Only chunks with new words ask the job, so remembered words cost no clock read
+        if (unknown != null && effort(chunk) == SimplificationJob.Effort.EXACT) {
+            // Every thread works out the same answers, so a race here only costs time
+            Map<String, String> resolved = resolver.resolveAll(unknown.keySet());
+            for (Map.Entry<String, Integer> entry : unknown.entrySet()) {
+                replacements.set(entry.getValue(), target(entry.getKey(), resolved.get(entry.getKey())));
+            }
+        }
+        return breaks;
+    }
+
+    /**
+     * Gets the replacement of a word from its row, see {@link #resolveRows(TextChunk, int)}.
+     *
+     * @return The replacement, or {@link #KEEP}.
+     */
+    private char[] replacement(TextChunk chunk, int row) {
+        if (row < 0) {
+            return KEEP;
+        }
+        char[] replacement = replacements.get(row);
+        if (replacement != null) {
+            return replacement;
+        }
+
+        // Not resolved with the chunk, because the job was short of time then
+        SimplificationJob.Effort effort = effort(chunk);
+        if (effort == SimplificationJob.Effort.EXACT) {
+            String lookup = store.word(row);
+            replacement = target(lookup, resolver.resolve(lookup));
+            replacements.set(row, replacement);
+        } else {
+            replacement = degraded(chunk.job, store.word(row), effort);
+        }
+        return replacement;
+    }
+
+    /**
+     * Gets the replacement of a word when there is no store, asking the resolver every time.
+     *
+     * @return The replacement, or {@link #KEEP}.
+     */
+    private char[] replacement(TextChunk chunk, char[] text, int start, int end) {
+        String lookup = lowered(chunk, text, start, end).toString();
+        SimplificationJob.Effort effort = effort(chunk);
+        return effort == SimplificationJob.Effort.EXACT ? target(lookup, resolver.resolve(lookup))
+                : degraded(chunk.job, lookup, effort);
+    }
+
+    // Lowercase copy of a word in the chunk's scratch space
+    private static CharSlice lowered(TextChunk chunk, char[] text, int start, int end) {
+        int length = end - start;
+        if (chunk.lowered.length < length) {
+            chunk.lowered = new char[Math.max(length, chunk.lowered.length * 2)];
+        }
+        char[] lowered = chunk.lowered;
+        for (int i = 0; i < length; i++) {
+            lowered[i] = Character.toLowerCase(text[start + i]);
+        }
+        return chunk.slice.set(lowered, 0, length);
+    }
+
+    private static SimplificationJob.Effort effort(TextChunk chunk) {
+        return chunk.job == null ? SimplificationJob.Effort.EXACT : chunk.job.effort();
+    }
+
+    /**
+     * Answers a word for a job running out of time: a known answer if there is one, otherwise the cheaper search if
+     * the effort allows it, otherwise the word is kept. Only the last two count as degraded.
+     *
+     * @return The replacement, or {@link #KEEP}.
+     */
+    private char[] degraded(SimplificationJob job, String word, SimplificationJob.Effort effort) {
+        String known = resolver.resolveWithin(word, SimplificationJob.Effort.CACHED);
+        if (known != null) {
+            return target(word, known);
+        }
+        String cheaper = effort == SimplificationJob.Effort.REDUCED ? resolver.resolveWithin(word, effort) : null;
+        job.degraded(word, cheaper != null ? SimplificationJob.Effort.REDUCED : SimplificationJob.Effort.CACHED);
+        return cheaper == null ? KEEP : target(word, cheaper);
+    }
+
+    // The shared chars of a target word, or KEEP if the word is not replaced
+    private char[] target(String word, String replacement) {
+        if (replacement == null || replacement.equals(word)) {
+            return KEEP;
+        }
+        return targets.computeIfAbsent(replacement, String::toCharArray);
+    }
+
+    private static void append(TextChunk chunk, char[] text, int from, int to) {
+        int length = to - from;
+        chunk.ensureOutput(length);
+        System.arraycopy(text, from, chunk.output, chunk.outputLength, length);
+        chunk.outputLength += length;
+    }
+
+    /**
+     * Writes a replacement in the case of the original word: all capitals if the original is (and is longer than
+     * one letter), a capital first letter if the original has one, otherwise as it is.
+     */
+    private static void appendWithCase(TextChunk chunk, char[] replacement, char[] text, int from, int to) {
+        boolean capitalized = Character.isUpperCase(text[from]);
+        boolean allCaps = capitalized && to - from > 1;
+        for (int i = from + 1; i < to && allCaps; i++) {
+            allCaps = !Character.isLowerCase(text[i]);
+        }
+
+        chunk.ensureOutput(replacement.length);
+        char[] output = chunk.output;
+        int position = chunk.outputLength;
+        for (int i = 0; i < replacement.length; i++) {
+            char c = replacement[i];
+            output[position + i] = allCaps || (capitalized && i == 0) ? Character.toUpperCase(c) : c;
+        }
+        chunk.outputLength += replacement.length;
+    }
+}
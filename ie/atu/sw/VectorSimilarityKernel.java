@@ -0,0 +1,63 @@
+package ie.atu.sw;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Similarity kernel built on the incubating Vector API, so the dot products compile down to SIMD instructions
+ * (AVX2 / AVX-512 on x86).
+ *
+ * <p>This class must only be loaded when the jdk.incubator.vector module is present. Compile and run with
+ * --add-modules jdk.incubator.vector, and get an instance through {@link SimilarityKernel#select()}.</p>
+ */
+public class VectorSimilarityKernel implements SimilarityKernel {
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    @Override
+    public float dot(float[] query, float[] matrix, int offset) {
+        int length = query.length;
+        int upperBound = SPECIES.loopBound(length);
+
+        // Multiply and add a full register of lanes at a time
+        FloatVector sum = FloatVector.zero(SPECIES);
+        int i = 0;
+        for (; i < upperBound; i += SPECIES.length()) {
+            FloatVector a = FloatVector.fromArray(SPECIES, query, i);
+            FloatVector b = FloatVector.fromArray(SPECIES, matrix, offset + i);
+            sum = a.fma(b, sum);
+        }
+        float result = sum.reduceLanes(VectorOperators.ADD);
+
+        // Leftover components
+        for (; i < length; i++) {
+            result += query[i] * matrix[offset + i];
+        }
+        return result;
+    }
+
+    @Override
+    public float dot(float[] query, int from, int to, float[] matrix, int offset) {
+        int upperBound = from + SPECIES.loopBound(to - from);
+
+        FloatVector sum = FloatVector.zero(SPECIES);
+        int i = from;
+        for (; i < upperBound; i += SPECIES.length()) {
+            FloatVector a = FloatVector.fromArray(SPECIES, query, i);
+            FloatVector b = FloatVector.fromArray(SPECIES, matrix, offset + i);
+            sum = a.fma(b, sum);
+        }
+        float result = sum.reduceLanes(VectorOperators.ADD);
+
+        // Leftover components
+        for (; i < to; i++) {
+            result += query[i] * matrix[offset + i];
+        }
+        return result;
+    }
+
+    @Override
+    public String name() {
+        return getClass().getSimpleName() + "/" + SPECIES.length();
+    }
+}
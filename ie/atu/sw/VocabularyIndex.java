@@ -0,0 +1,124 @@
+package ie.atu.sw;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * This class holds the Google-1000 vocabulary in a search friendly layout.
+ *
+ * <p>All vectors live in one flat row-major float[] (row i starts at i * dimensions) and are normalized to unit
+ * length when the index is built. The word for row i is words[i]. Because every row already has a magnitude of 1,
+ * cosine similarity against a normalized query is just the dot product.</p>
+ */
+public class VocabularyIndex {
+    final String[] words;
+    final float[] matrix;
+    final int dimensions;
+
+    private VocabularyIndex(String[] words, float[] matrix, int dimensions) {
+        this.words = words;
+        this.matrix = matrix;
+        this.dimensions = dimensions;
+    }
+
+    /**
+     * Builds the index from the given words, looking up each vector in the map. Words keep the order of the list,
+     * so the search result for ties is the same on every run.
+     *
+     * <p><b>Big-O Notation is O(n * m)</b> -> n = Number of words and m = Length of each vector. Every component
+     * is copied and scaled once.</p>
+     *
+     * @param orderedWords The words to index, in the order they should be stored.
+     * @param embeddings   A map containing the vector for every word in the list.
+     * @return The new index.
+     * @throws IllegalArgumentException If the vectors are of different lengths.
+     */
+    public static VocabularyIndex build(List<String> orderedWords, Map<String, double[]> embeddings) {
+        String[] words = orderedWords.toArray(new String[0]);
+        int dimensions = words.length == 0 ? 0 : embeddings.get(words[0]).length;
+        float[] matrix = new float[words.length * dimensions];
+
+        for (int row = 0; row < words.length; row++) {
+            double[] vector = embeddings.get(words[row]);
+            if (vector.length != dimensions) {
+                throw new IllegalArgumentException("Vectors must have the same length");
+            }
+
+            // Store the unit vector so the search only needs dot products
+            double norm = norm(vector);
+            int offset = row * dimensions;
+            for (int i = 0; i < dimensions; i++) {
+                matrix[offset + i] = norm == 0 ? 0f : (float) (vector[i] / norm);
+            }
+        }
+        return new VocabularyIndex(words, matrix, dimensions);
+    }
+
+    /**
+     * Converts a query vector into the unit length float form used by the matrix.
+     *
+     * @param vector The vector of the word being simplified.
+     * @return The normalized copy of the vector.
+     * @throws IllegalArgumentException If the vector length does not match the index.
+     */
+    public float[] normalize(double[] vector) {
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException("Vectors must have the same length");
+        }
+
+        double norm = norm(vector);
+        float[] unit = new float[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            unit[i] = norm == 0 ? 0f : (float) (vector[i] / norm);
+        }
+        return unit;
+    }
+
+    /**
+     * Calculates a checksum of the words and vectors, used to check that a saved search structure was built for this
+     * exact index.
+     *
+     * @return The checksum.
+     */
+    public long fingerprint() {
+        CRC32C crc = new CRC32C();
+        for (String word : words) {
+            crc.update(word.getBytes(StandardCharsets.UTF_8));
+            crc.update('\n');
+        }
+
+        // Vectors are added a block at a time
+        ByteBuffer block = ByteBuffer.allocate(4096 * Float.BYTES);
+        for (int start = 0; start < matrix.length; start += 4096) {
+            int length = Math.min(4096, matrix.length - start);
+            block.clear();
+            block.asFloatBuffer().put(matrix, start, length);
+            block.limit(length * Float.BYTES);
+            crc.update(block);
+        }
+        return crc.getValue() ^ ((long) dimensions << 32);
+    }
+
+    public String word(int row) {
+        return words[row];
+    }
+
+    public int size() {
+        return words.length;
+    }
+
+    public int dimensions() {
+        return dimensions;
+    }
+
+    private static double norm(double[] vector) {
+        double sum = 0.0;
+        for (double value : vector) {
+            sum += value * value;
+        }
+        return Math.sqrt(sum);
+    }
+}
@@ -0,0 +1,47 @@
+package ie.atu.sw;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Decides what each word of the input text is replaced with.
+ */
+@FunctionalInterface
+public interface WordResolver {
+    /**
+     * Finds the replacement for a single word.
+     *
+     * @param word The word from the input text.
+     * @return The replacement, or the word itself if it should be kept.
+     */
+    String resolve(String word);
+
+    /**
+     * Finds the replacement for a single word with no more than the given effort, for jobs running out of time (see
+     * {@link SimplificationJob}). With {@link SimplificationJob.Effort#CACHED} the answer must be the exact one, only
+     * found without a search. By default only the exact effort gives an answer.
+     *
+     * @param word   The word from the input text.
+     * @param effort The most work allowed.
+     * @return The replacement, the word itself if it should be kept, or null if it can't be found with that effort.
+     */
+    default String resolveWithin(String word, SimplificationJob.Effort effort) {
+        return effort == SimplificationJob.Effort.EXACT ? resolve(word) : null;
+    }
+
+    /**
+     * Finds the replacements for many words at once. Resolvers that can share work between words (such as a
+     * batched similarity search) override this. By default each word is resolved on its own.
+     *
+     * @param words The words, without duplicates.
+     * @return A map of every word to its replacement.
+     */
+    default Map<String, String> resolveAll(Collection<String> words) {
+        Map<String, String> replacements = new HashMap<>();
+        for (String word : words) {
+            replacements.put(word, resolve(word));
+        }
+        return replacements;
+    }
+}
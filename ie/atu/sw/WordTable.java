@@ -0,0 +1,180 @@
+package ie.atu.sw;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * An immutable table of words, each with a row number from 0 to size - 1.
+ *
+ * <p>All the words are stored back to back as UTF-8 in one byte[], and found through an open-addressing hash table
+ * (linear probing, at most half full) of row numbers. Compared with a HashMap&lt;String, ...&gt; there is no entry
+ * object, no String and no boxed value per word, and a lookup can be done straight from a {@link CharSequence} or a
+ * slice of UTF-8 bytes without making a String first.</p>
+ *
+ * <p>The hash is the same FNV-1a used by the {@link MappedEmbeddingStore} file format.</p>
+ */
+public final class WordTable {
+    private final byte[] bytes;
+    private final int[] offsets;
+    private final int[] hashes;
+    private final int[] slots;
+    private final int mask;
+
+    private WordTable(byte[] bytes, int[] offsets, int[] hashes, int[] slots) {
+        this.bytes = bytes;
+        this.offsets = offsets;
+        this.hashes = hashes;
+        this.slots = slots;
+        this.mask = slots.length - 1;
+    }
+
+    /**
+     * Builds the table. Row i is words[i].
+     *
+     * <p><b>Big-O Notation is O(n * l)</b> -> n = Number of words and l = Average length of a word.</p>
+     *
+     * @param words The words, without duplicates.
+     * @return The new table.
+     * @throws IllegalArgumentException If a word appears twice.
+     */
+    public static WordTable of(String[] words) {
+        byte[][] encoded = new byte[words.length][];
+        int[] offsets = new int[words.length + 1];
+        for (int row = 0; row < words.length; row++) {
+            encoded[row] = words[row].getBytes(StandardCharsets.UTF_8);
+            offsets[row + 1] = Math.addExact(offsets[row], encoded[row].length);
+        }
+
+        byte[] bytes = new byte[offsets[words.length]];
+        int[] hashes = new int[words.length];
+        for (int row = 0; row < words.length; row++) {
+            System.arraycopy(encoded[row], 0, bytes, offsets[row], encoded[row].length);
+            hashes[row] = MappedEmbeddingStore.hash(encoded[row], 0, encoded[row].length);
+        }
+
+        // At least twice as many slots as words keeps the probe sequences short
+        int[] slots = new int[Integer.highestOneBit(Math.max(2, words.length * 2 - 1)) << 1];
+        WordTable table = new WordTable(bytes, offsets, hashes, slots);
+        for (int row = 0; row < words.length; row++) {
+            if (table.row(bytes, offsets[row], offsets[row + 1]) >= 0) {
+                throw new IllegalArgumentException("Duplicate word: " + words[row]);
+            }
+            int slot = hashes[row] & table.mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & table.mask;
+            }
+            slots[slot] = row + 1;
+        }
+        return table;
+    }
+
+    /**
+     * Finds the row of a word given as UTF-8 bytes.
+     *
+     * <p><b>Big-O Notation is O(l)</b> -> l = Length of the word, on average.</p>
+     *
+     * @param utf8 The buffer holding the word.
+     * @param from The first byte of the word.
+     * @param to   The end of the word (exclusive).
+     * @return The row, or -1 if the word is not in the table.
+     */
+    public int row(byte[] utf8, int from, int to) {
+        int hash = MappedEmbeddingStore.hash(utf8, from, to);
+        int length = to - from;
+        for (int slot = hash & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            int row = slots[slot] - 1;
+            int start = offsets[row];
+            if (hashes[row] == hash && offsets[row + 1] - start == length
+                    && Arrays.equals(bytes, start, start + length, utf8, from, to)) {
+                return row;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the row of a word given as characters. The characters are encoded to UTF-8 on the fly, so nothing is
+     * allocated.
+     *
+     * <p><b>Big-O Notation is O(l)</b> -> l = Length of the word, on average.</p>
+     *
+     * @param word The word, for example a String or a slice of a line.
+     * @return The row, or -1 if the word is not in the table.
+     */
+    public int row(CharSequence word) {
+        int hash = 0x811C9DC5;
+        int length = 0;
+        for (int i = 0; i < word.length(); i++) {
+            int codePoint = codePointAt(word, i);
+            if (codePoint > 0xFFFF) {
+                i++;
+            }
+            int count = utf8Length(codePoint);
+            for (int b = 0; b < count; b++) {
+                hash ^= utf8Byte(codePoint, count, b) & 0xFF;
+                hash *= 0x01000193;
+            }
+            length += count;
+        }
+
+        for (int slot = hash & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            int row = slots[slot] - 1;
+            if (hashes[row] == hash && offsets[row + 1] - offsets[row] == length && equals(row, word)) {
+                return row;
+            }
+        }
+        return -1;
+    }
+
+    // Compares a stored word with characters, encoding them the same way as the hash
+    private boolean equals(int row, CharSequence word) {
+        int position = offsets[row];
+        for (int i = 0; i < word.length(); i++) {
+            int codePoint = codePointAt(word, i);
+            if (codePoint > 0xFFFF) {
+                i++;
+            }
+            int count = utf8Length(codePoint);
+            for (int b = 0; b < count; b++) {
+                if (bytes[position++] != utf8Byte(codePoint, count, b)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // The code point at i, with unpaired surrogates as '?' like String.getBytes
+    private static int codePointAt(CharSequence text, int i) {
+        char c = text.charAt(i);
+        if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+            return Character.toCodePoint(c, text.charAt(i + 1));
+        }
+        return Character.isSurrogate(c) ? '?' : c;
+    }
+
+    private static int utf8Length(int codePoint) {
+        return codePoint < 0x80 ? 1 : codePoint < 0x800 ? 2 : codePoint < 0x10000 ? 3 : 4;
+    }
+
+    // Byte b of the UTF-8 encoding of a code point that takes count bytes
+    private static byte utf8Byte(int codePoint, int count, int b) {
+        if (count == 1) {
+            return (byte) codePoint;
+        }
+        if (b == 0) {
+            int lead = count == 2 ? 0xC0 : count == 3 ? 0xE0 : 0xF0;
+            return (byte) (lead | (codePoint >> (6 * (count - 1))));
+        }
+        return (byte) (0x80 | ((codePoint >> (6 * (count - 1 - b))) & 0x3F));
+    }
+
+    // The word in a row, as a new String
+    public String word(int row) {
+        return new String(bytes, offsets[row], offsets[row + 1] - offsets[row], StandardCharsets.UTF_8);
+    }
+
+    public int size() {
+        return hashes.length;
+    }
+}